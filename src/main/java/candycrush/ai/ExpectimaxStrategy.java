@@ -0,0 +1,408 @@
+package candycrush.ai;
+
+import candycrush.model.BoardSnapshot;
+import candycrush.model.GameEngine;
+import candycrush.model.GameSeed;
+import candycrush.model.MoveResult;
+import candycrush.model.ScoreTable;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Depth-limited expectimax search over swaps and the refills that follow
+ * them.
+ *
+ * A max node tries the swaps {@link MoveEvaluator} ranks best. A chance
+ * node plays the swap with its full cascade once per sampled refill
+ * stream, restoring one reusable {@link GameEngine} to the position with
+ * the sample's seed each time, and averages the points earned plus the
+ * value of the best reply at the next depth.
+ * Refill streams are drawn from a generator seeded by the strategy's seed
+ * and the position's hash, so a position always gets the same samples and
+ * all swaps of a node are compared on the same ones.
+ *
+ * Moves are searched in ranked order. Once a move's first-step score plus
+ * an optimistic bound on what follows can no longer beat the best value
+ * found, it and every lower-ranked move are pruned. The bound is the
+ * largest follow-on value seen so far at the node, times a slack factor,
+ * so the pruning is heuristic: it trades a rare miss for a much smaller
+ * tree. The search deepens one level at a time until the maximum depth,
+ * the deadline or a stop request, and answers with the best move of the
+ * deepest level that finished; the evaluator's top move if none did.
+ *
+ * Finished max nodes are kept in a {@link TranspositionTable}. Since the
+ * samples only depend on the position, a stored value is exact for the
+ * same depth and is reused as is; an entry of another depth still puts
+ * its best move first, which makes the next level prune more. A position
+ * searched again, say for a hint and then for auto-play, is answered from
+ * the table.
+ *
+ * Instances hold scratch state and are not thread-safe.
+ */
+public class ExpectimaxStrategy implements GameAI.AnytimeStrategy {
+
+    public static final int DEFAULT_DEPTH = 2;
+    public static final int DEFAULT_SAMPLES = 4;
+    public static final int DEFAULT_BREADTH = 8;
+    public static final long DEFAULT_BUDGET_MILLIS = 50;
+
+    /** Slack the largest follow-on value seen is scaled by when pruning */
+    private static final double BOUND_SLACK = 2.0;
+
+    private final ScoreTable table;
+    private final MoveEvaluator evaluator;
+    private final MoveResult result;
+    private final int maxDepth;
+    private final int samples;
+    private final int breadth;
+    private final long budgetNanos;
+    private final long seed;
+    private final TranspositionTable transpositions;
+
+    private GameEngine engine;
+    private long deadline;
+    private BooleanSupplier stopped;
+    private boolean timedOut;
+    private int lastDepth;
+    private int lastSimulations;
+
+    /**
+     * Create a strategy with the default depth, samples, breadth and budget
+     *
+     * @param table Scoring rules of the game
+     * @param seed Seed of the refill samples
+     */
+    public ExpectimaxStrategy(ScoreTable table, long seed) {
+        this(
+            table,
+            DEFAULT_DEPTH,
+            DEFAULT_SAMPLES,
+            DEFAULT_BREADTH,
+            DEFAULT_BUDGET_MILLIS,
+            seed
+        );
+    }
+
+    /**
+     * Create a strategy
+     *
+     * @param table Scoring rules of the game
+     * @param maxDepth Number of moves to look ahead, at least 1
+     * @param samples Refill streams sampled per chance node, at least 1
+     * @param breadth Most swaps expanded per max node, at least 1
+     * @param budgetMillis Time allowed per call in milliseconds
+     * @param seed Seed of the refill samples
+     */
+    public ExpectimaxStrategy(
+        ScoreTable table,
+        int maxDepth,
+        int samples,
+        int breadth,
+        long budgetMillis,
+        long seed
+    ) {
+        this(
+            table,
+            maxDepth,
+            samples,
+            breadth,
+            budgetMillis,
+            seed,
+            new TranspositionTable()
+        );
+    }
+
+    /**
+     * Create a strategy that caches its results in the given table
+     *
+     * @param table Scoring rules of the game
+     * @param maxDepth Number of moves to look ahead, at least 1
+     * @param samples Refill streams sampled per chance node, at least 1
+     * @param breadth Most swaps expanded per max node, at least 1
+     * @param budgetMillis Time allowed per call in milliseconds
+     * @param seed Seed of the refill samples
+     * @param transpositions Table of searched positions, used only by this
+     *        strategy and only with these settings
+     */
+    public ExpectimaxStrategy(
+        ScoreTable table,
+        int maxDepth,
+        int samples,
+        int breadth,
+        long budgetMillis,
+        long seed,
+        TranspositionTable transpositions
+    ) {
+        if (maxDepth < 1 || samples < 1 || breadth < 1) {
+            throw new IllegalArgumentException(
+                "Depth, samples and breadth must be at least 1"
+            );
+        }
+
+        this.table = table;
+        this.evaluator = new MoveEvaluator(table);
+        this.result = new MoveResult();
+        this.maxDepth = maxDepth;
+        this.samples = samples;
+        this.breadth = breadth;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.seed = seed;
+        this.transpositions = transpositions;
+    }
+
+    @Override
+    public int[] findMove(BoardSnapshot snapshot) {
+        return findMove(snapshot, System.nanoTime() + budgetNanos, () -> false);
+    }
+
+    @Override
+    public int[] findMove(
+        BoardSnapshot snapshot,
+        long deadlineNanos,
+        BooleanSupplier stopped
+    ) {
+        this.deadline = deadlineNanos;
+        this.stopped = stopped;
+        timedOut = false;
+        lastDepth = 0;
+        lastSimulations = 0;
+        transpositions.newSearch();
+
+        List<MoveEvaluator.ScoredMove> moves = evaluator.rankMoves(snapshot);
+        if (moves.isEmpty()) {
+            return null;
+        }
+
+        int slot = transpositions.find(snapshot.getHash());
+        if (slot >= 0 && transpositions.depthAt(slot) == maxDepth) {
+            int stored = indexOf(moves, transpositions.moveAt(slot), snapshot);
+            if (stored >= 0) {
+                lastDepth = maxDepth;
+                return moves.get(stored).toArray();
+            }
+        }
+
+        int[] best = moves.get(0).toArray();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int bestIndex = search(snapshot, moves, depth);
+            if (timedOut) {
+                break;
+            }
+            best = moves.get(bestIndex).toArray();
+            lastDepth = depth;
+        }
+
+        return best;
+    }
+
+    /**
+     * Find the best swap at the root
+     *
+     * @return Index of the best move in the ranked list; meaningless once
+     *         the budget has run out
+     */
+    private int search(
+        BoardSnapshot snapshot,
+        List<MoveEvaluator.ScoredMove> moves,
+        int depth
+    ) {
+        int[] bestIndex = { 0 };
+        maxValue(snapshot, moves, depth, bestIndex);
+        return bestIndex[0];
+    }
+
+    /**
+     * Get the value of the best swap of a position, from the table if it
+     * was searched to this depth before
+     *
+     * @param moves Legal moves of the position, best ranked first
+     * @param depth Moves left to look ahead, at least 1
+     * @param bestIndex Receives the index of the best move, or null
+     * @return Expected points of the best move, 0 if there is none
+     */
+    private double maxValue(
+        BoardSnapshot snapshot,
+        List<MoveEvaluator.ScoredMove> moves,
+        int depth,
+        int[] bestIndex
+    ) {
+        long hash = snapshot.getHash();
+        int slot = transpositions.find(hash);
+        int first = -1;
+        if (slot >= 0) {
+            first = indexOf(moves, transpositions.moveAt(slot), snapshot);
+            if (transpositions.depthAt(slot) == depth) {
+                if (bestIndex != null) {
+                    bestIndex[0] = Math.max(0, first);
+                }
+                return transpositions.valueAt(slot);
+            }
+        }
+
+        double best = 0;
+        double followBound = 0;
+        int bestMove = -1;
+        int count = Math.min(breadth, moves.size());
+        if (first >= count) {
+            first = -1;
+        }
+
+        // The stored best move goes first, then the rest in ranked order
+        for (int k = first < 0 ? 0 : -1; k < count; k++) {
+            int i = k < 0 ? first : k;
+            if (k >= 0 && k == first) {
+                continue;
+            }
+
+            MoveEvaluator.ScoredMove move = moves.get(i);
+            if (
+                bestMove >= 0 &&
+                move.getScore() + BOUND_SLACK * followBound <= best
+            ) {
+                break;
+            }
+
+            double value = chanceValue(snapshot, move, depth);
+            if (timedOut) {
+                return 0;
+            }
+
+            followBound = Math.max(followBound, value - move.getScore());
+            if (bestMove < 0 || value > best) {
+                best = value;
+                bestMove = i;
+            }
+        }
+
+        if (bestIndex != null) {
+            bestIndex[0] = Math.max(0, bestMove);
+        }
+        transpositions.store(
+            hash,
+            depth,
+            best,
+            bestMove < 0
+                ? TranspositionTable.NO_MOVE
+                : moves.get(bestMove).getKey(snapshot.getCols())
+        );
+        return best;
+    }
+
+    /**
+     * Find a stored move in a position's ranked moves
+     *
+     * @return Index of the move, or -1 if it is not among them
+     */
+    private static int indexOf(
+        List<MoveEvaluator.ScoredMove> moves,
+        int key,
+        BoardSnapshot snapshot
+    ) {
+        if (key == TranspositionTable.NO_MOVE) {
+            return -1;
+        }
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i).getKey(snapshot.getCols()) == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the expected value of a swap over sampled refills
+     *
+     * @param depth Moves left to look ahead, this one included
+     * @return Mean of the cascade points plus the best reply's value
+     */
+    private double chanceValue(
+        BoardSnapshot snapshot,
+        MoveEvaluator.ScoredMove move,
+        int depth
+    ) {
+        SplittableRandom refills = new SplittableRandom(
+            seed ^ snapshot.getHash()
+        );
+        double total = 0;
+
+        for (int k = 0; k < samples; k++) {
+            if (System.nanoTime() - deadline > 0 || stopped.getAsBoolean()) {
+                timedOut = true;
+                return 0;
+            }
+
+            GameEngine engine = engineFor(snapshot);
+            engine.restore(snapshot, new GameSeed(refills.nextLong()));
+            engine.playMove(
+                move.getRow1(),
+                move.getCol1(),
+                move.getRow2(),
+                move.getCol2(),
+                result
+            );
+            lastSimulations++;
+
+            double value = result.getScoreDelta();
+            if (depth > 1) {
+                BoardSnapshot next = engine.snapshot();
+                value += maxValue(
+                    next,
+                    evaluator.rankMoves(next),
+                    depth - 1,
+                    null
+                );
+                if (timedOut) {
+                    return 0;
+                }
+            }
+            total += value;
+        }
+
+        return total / samples;
+    }
+
+    /**
+     * Get the search engine, creating it for the first board and for one
+     * of another size. A sample only needs it until it has taken the
+     * snapshot to search deeper from, so every level shares it.
+     */
+    private GameEngine engineFor(BoardSnapshot snapshot) {
+        if (
+            engine == null ||
+            engine.getRows() != snapshot.getRows() ||
+            engine.getCols() != snapshot.getCols()
+        ) {
+            engine = new GameEngine(snapshot, new GameSeed(seed));
+            engine.setScoreTable(table);
+            engine.setParallelOps(null);
+        }
+        return engine;
+    }
+
+    /**
+     * Get the deepest level the last call finished
+     *
+     * @return Depth, 0 if the budget ran out during the first level
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * Get the number of swaps simulated with their cascades by the last call
+     *
+     * @return Simulation count
+     */
+    public int getLastSimulations() {
+        return lastSimulations;
+    }
+
+    public long getBudgetMillis() {
+        return budgetNanos / 1_000_000L;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositions;
+    }
+}
@@ -1,17 +1,25 @@
 package candycrush.ai;
 
-import candycrush.model.Candy;
+import candycrush.model.BoardSnapshot;
+import candycrush.model.BoardState;
 import candycrush.model.GameBoard;
-import java.util.ArrayList;
+import candycrush.model.MoveGenerator;
+import candycrush.model.ScoreTable;
+import candycrush.util.GameLoop;
 import java.util.List;
 import java.util.Random;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * AI implementation for Candy Crush game.
  * Provides functionality for finding optimal moves, generating hints,
- * and automatic gameplay.
+ * and automatic gameplay. Strategies analyse a {@link BoardSnapshot} of the
+ * board, never the live board the renderer is drawing. Snapshots must be
+ * taken on the board's loop, so callers pass them in. Searches are
+ * serialized, so hints searched on another thread and auto-play on the
+ * game loop can share one strategy.
  */
 public class GameAI {
 
@@ -21,16 +29,38 @@ public class GameAI {
 
     private final GameBoard gameBoard;
     private AIStrategy strategy;
-    private Random random;
+    private final Random random;
+    private final Object searchLock;
 
     public enum Difficulty {
         EASY,
         MEDIUM,
         HARD,
+        EXPERT,
     }
 
     public interface AIStrategy {
-        int[] findMove(GameBoard board);
+        int[] findMove(BoardSnapshot snapshot);
+    }
+
+    /**
+     * Strategy that can be stopped early and still answer with the best
+     * move it has found so far
+     */
+    public interface AnytimeStrategy extends AIStrategy {
+        /**
+         * Search until a deadline or until told to stop
+         *
+         * @param snapshot Position to search
+         * @param deadlineNanos {@link System#nanoTime()} to stop at
+         * @param stopped Polled during the search; true stops it at once
+         * @return Best move found so far, or null if there is none
+         */
+        int[] findMove(
+            BoardSnapshot snapshot,
+            long deadlineNanos,
+            BooleanSupplier stopped
+        );
     }
 
     /**
@@ -40,251 +70,284 @@ public class GameAI {
      */
     public GameAI(GameBoard gameBoard) {
         this.gameBoard = gameBoard;
-        this.random = new Random();
-        this.strategy = new OptimalMatchStrategy();
+        this.random = gameBoard.getSeed().aiStream();
+        this.searchLock = new Object();
+        this.strategy = new OptimalMatchStrategy(
+            gameBoard.getEngine().getScoreTable()
+        );
     }
 
     /**
-     * Find the best move according to current strategy
+     * Find the best move of a position according to current strategy
      *
+     * @param snapshot Position to search, taken on the board's loop
      * @return An array with four values [row1, col1, row2, col2] representing a move,
      *         or null if no move is found
      */
-    public int[] findBestMove() {
-        try {
-            return strategy.findMove(gameBoard);
-        } catch (Exception e) {
-            LOGGER.log(Level.WARNING, "Error finding best move", e);
-            return findRandomValidMove();
+    public int[] findBestMove(BoardSnapshot snapshot) {
+        synchronized (searchLock) {
+            try {
+                return strategy.findMove(snapshot);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error finding best move", e);
+                return findRandomValidMove(new BoardState(snapshot));
+            }
         }
     }
 
     /**
-     * Set the AI difficulty level
+     * Find the best move of a position with the current strategy, from any
+     * thread. An {@link AnytimeStrategy} answers by the deadline or as soon
+     * as it is stopped; other strategies run to the end.
      *
-     * @param difficulty Difficulty level
+     * @param snapshot Position to search
+     * @param deadlineNanos {@link System#nanoTime()} to stop at
+     * @param stopped Polled during the search; true stops it
+     * @return An array [row1, col1, row2, col2], or null if no move is
+     *         found or the search was stopped before it started
      */
-    public void setDifficulty(Difficulty difficulty) {
-        switch (difficulty) {
-            case EASY:
-                this.strategy = new RandomValidMoveStrategy();
-                break;
-            case MEDIUM:
-                this.strategy = new BasicMatchStrategy();
-                break;
-            case HARD:
-                this.strategy = new OptimalMatchStrategy();
-                break;
+    public int[] findBestMove(
+        BoardSnapshot snapshot,
+        long deadlineNanos,
+        BooleanSupplier stopped
+    ) {
+        synchronized (searchLock) {
+            if (stopped.getAsBoolean()) {
+                return null;
+            }
+            try {
+                if (strategy instanceof AnytimeStrategy) {
+                    AnytimeStrategy anytime = (AnytimeStrategy) strategy;
+                    return anytime.findMove(snapshot, deadlineNanos, stopped);
+                }
+                return strategy.findMove(snapshot);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Error finding best move", e);
+                return findGreedyMove(snapshot);
+            }
         }
     }
 
     /**
-     * Find a random valid move on the board
+     * Find the swap whose first step scores most, in microseconds and
+     * without taking the search lock
      *
-     * @return An array with four values [row1, col1, row2, col2] representing a move,
-     *         or null if no move is found
+     * @param snapshot Position to evaluate
+     * @return An array [row1, col1, row2, col2], or null if no move exists
      */
-    private int[] findRandomValidMove() {
-        List<int[]> validMoves = new ArrayList<>();
-
-        int rows = gameBoard.getRows();
-        int cols = gameBoard.getCols();
-
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (j < cols - 1 && isValidSwap(i, j, i, j + 1)) {
-                    validMoves.add(new int[] { i, j, i, j + 1 });
-                }
-
-                if (i < rows - 1 && isValidSwap(i, j, i + 1, j)) {
-                    validMoves.add(new int[] { i, j, i + 1, j });
-                }
-            }
-        }
-
-        if (!validMoves.isEmpty()) {
-            return validMoves.get(random.nextInt(validMoves.size()));
-        }
+    public int[] findGreedyMove(BoardSnapshot snapshot) {
+        List<MoveEvaluator.ScoredMove> moves = rankMoves(snapshot);
+        return moves.isEmpty() ? null : moves.get(0).toArray();
+    }
 
-        return null;
+    /**
+     * Score every legal swap of a position with the board's scoring table
+     *
+     * @param snapshot Position to evaluate
+     * @return Legal moves, best first
+     */
+    private List<MoveEvaluator.ScoredMove> rankMoves(BoardSnapshot snapshot) {
+        return new MoveEvaluator(gameBoard.getEngine().getScoreTable())
+            .rankMoves(snapshot);
     }
 
     /**
-     * Check if swapping two candies would result in a match
+     * Set the AI difficulty level
      *
-     * @param row1 Row of first candy
-     * @param col1 Column of first candy
-     * @param row2 Row of second candy
-     * @param col2 Column of second candy
-     * @return true if the swap would create a match
+     * @param difficulty Difficulty level
      */
-    private boolean isValidSwap(int row1, int col1, int row2, int col2) {
-        Candy candy1 = gameBoard.getCandyAt(row1, col1);
-        Candy candy2 = gameBoard.getCandyAt(row2, col2);
+    public void setDifficulty(Difficulty difficulty) {
+        setStrategy(
+            createStrategy(
+                difficulty,
+                gameBoard.getEngine().getScoreTable(),
+                random
+            )
+        );
+    }
 
-        if (candy1 == null || candy2 == null) {
-            return false;
+    /**
+     * Create the strategy of a difficulty level, for use without a game
+     * board, for example by headless tools
+     *
+     * @param difficulty Difficulty level
+     * @param table Scoring rules of the game
+     * @param random Source of the strategy's random choices
+     * @return New strategy; not thread-safe
+     */
+    public static AIStrategy createStrategy(
+        Difficulty difficulty,
+        ScoreTable table,
+        Random random
+    ) {
+        switch (difficulty) {
+            case EASY:
+                return new RandomValidMoveStrategy(random);
+            case MEDIUM:
+                return new BasicMatchStrategy();
+            case HARD:
+                return new OptimalMatchStrategy(table);
+            case EXPERT:
+                return new ExpectimaxStrategy(table, random.nextLong());
+            default:
+                throw new IllegalArgumentException(
+                    "Unknown difficulty: " + difficulty
+                );
         }
-
-        Candy.CandyColor tempColor = candy1.getCandyColor();
-        candy1.setCandyColor(candy2.getCandyColor());
-        candy2.setCandyColor(tempColor);
-
-        boolean hasMatch = !gameBoard.findAllMatches().isEmpty();
-
-        candy2.setCandyColor(candy1.getCandyColor());
-        candy1.setCandyColor(tempColor);
-
-        return hasMatch;
     }
 
     /**
-     * Score a potential move based on match pattern and candy types
+     * Use a custom strategy
      *
-     * @param row1 Row of first candy
-     * @param col1 Column of first candy
-     * @param row2 Row of second candy
-     * @param col2 Column of second candy
-     * @return Score for this move (higher is better)
+     * @param strategy Strategy that picks moves from now on
      */
-    private int scoreMove(int row1, int col1, int row2, int col2) {
-        Candy candy1 = gameBoard.getCandyAt(row1, col1);
-        Candy candy2 = gameBoard.getCandyAt(row2, col2);
+    public void setStrategy(AIStrategy strategy) {
+        synchronized (searchLock) {
+            this.strategy = strategy;
+        }
+    }
 
-        if (candy1 == null || candy2 == null) {
-            return 0;
+    public AIStrategy getStrategy() {
+        synchronized (searchLock) {
+            return strategy;
         }
+    }
 
-        Candy.CandyColor tempColor = candy1.getCandyColor();
-        candy1.setCandyColor(candy2.getCandyColor());
-        candy2.setCandyColor(tempColor);
+    /**
+     * Find a random valid move on the board
+     *
+     * @param state Private state to analyse
+     * @return An array with four values [row1, col1, row2, col2] representing a move,
+     *         or null if no move is found
+     */
+    private int[] findRandomValidMove(BoardState state) {
+        return findRandomValidMove(state, random);
+    }
 
-        List<Candy> matches = gameBoard.findAllMatches();
-        int score = matches.size() * 10;
+    private static int[] findRandomValidMove(BoardState state, Random random) {
+        List<int[]> validMoves = MoveGenerator.findValidMoves(state);
 
-        for (Candy candy : matches) {
-            if (candy.getType() != Candy.Type.SIMPLE) {
-                score += 20;
-            }
-        }
-
-        if (matches.size() >= 4) {
-            score += 50;
+        if (!validMoves.isEmpty()) {
+            return validMoves.get(random.nextInt(validMoves.size()));
         }
 
-        candy2.setCandyColor(candy1.getCandyColor());
-        candy1.setCandyColor(tempColor);
-
-        return score;
+        return null;
     }
 
     /**
      * Strategy that picks completely random valid moves
      */
-    private class RandomValidMoveStrategy implements AIStrategy {
+    private static class RandomValidMoveStrategy implements AIStrategy {
+
+        private final Random random;
+
+        RandomValidMoveStrategy(Random random) {
+            this.random = random;
+        }
 
         @Override
-        public int[] findMove(GameBoard board) {
-            return findRandomValidMove();
+        public int[] findMove(BoardSnapshot snapshot) {
+            return findRandomValidMove(new BoardState(snapshot), random);
         }
     }
 
     /**
      * Strategy that finds the first valid move it encounters
      */
-    private class BasicMatchStrategy implements AIStrategy {
+    private static class BasicMatchStrategy implements AIStrategy {
 
         @Override
-        public int[] findMove(GameBoard board) {
-            int rows = board.getRows();
-            int cols = board.getCols();
-
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
-                    if (j < cols - 1 && isValidSwap(i, j, i, j + 1)) {
-                        return new int[] { i, j, i, j + 1 };
-                    }
-
-                    if (i < rows - 1 && isValidSwap(i, j, i + 1, j)) {
-                        return new int[] { i, j, i + 1, j };
-                    }
-                }
-            }
+        public int[] findMove(BoardSnapshot snapshot) {
+            List<int[]> validMoves = MoveGenerator.findValidMoves(
+                new BoardState(snapshot)
+            );
 
-            return null;
+            return validMoves.isEmpty() ? null : validMoves.get(0);
         }
     }
 
     /**
-     * Strategy that finds the optimal move based on scoring
+     * Strategy that plays the legal swap whose first step scores most,
+     * evaluated on the snapshot without touching any board
      */
-    private class OptimalMatchStrategy implements AIStrategy {
-
-        @Override
-        public int[] findMove(GameBoard board) {
-            int rows = board.getRows();
-            int cols = board.getCols();
-            int[] bestMove = null;
-            int bestScore = -1;
-
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
-                    if (j < cols - 1) {
-                        int score = scoreMove(i, j, i, j + 1);
-                        if (score > bestScore) {
-                            bestScore = score;
-                            bestMove = new int[] { i, j, i, j + 1 };
-                        }
-                    }
+    private static class OptimalMatchStrategy implements AIStrategy {
 
-                    if (i < rows - 1) {
-                        int score = scoreMove(i, j, i + 1, j);
-                        if (score > bestScore) {
-                            bestScore = score;
-                            bestMove = new int[] { i, j, i + 1, j };
-                        }
-                    }
-                }
-            }
+        private final MoveEvaluator evaluator;
 
-            if (bestMove != null) {
-                return bestMove;
-            }
+        OptimalMatchStrategy(ScoreTable table) {
+            this.evaluator = new MoveEvaluator(table);
+        }
 
-            return findRandomValidMove();
+        @Override
+        public int[] findMove(BoardSnapshot snapshot) {
+            List<MoveEvaluator.ScoredMove> moves = evaluator.rankMoves(
+                snapshot
+            );
+            return moves.isEmpty() ? null : moves.get(0).toArray();
         }
     }
 
     /**
      * Start auto-play mode with the current strategy
      *
+     * @param gameLoop Session loop that paces the moves
      * @param delayMillis Delay between moves in milliseconds
-     * @return Thread running the auto-play
+     * @return Task running the auto-play; cancel it to stop
      */
-    public Thread startAutoPlay(int delayMillis) {
-        Thread autoPlayThread = new Thread(() -> {
-            try {
-                while (
-                    !gameBoard.isGameOver() &&
-                    !Thread.currentThread().isInterrupted()
-                ) {
-                    int[] move = findBestMove();
-                    if (move != null) {
-                        gameBoard.selectCandy(move[0], move[1]);
-                        Thread.sleep(delayMillis / 2);
-
-                        gameBoard.selectCandy(move[2], move[3]);
-                        Thread.sleep(delayMillis);
-                    } else {
-                        break;
+    public GameLoop.Task startAutoPlay(GameLoop gameLoop, int delayMillis) {
+        AutoPlayer player = new AutoPlayer();
+        player.task = gameLoop.scheduleAtFixedRate(
+            player,
+            delayMillis / 2,
+            Math.max(1, delayMillis / 2)
+        );
+        return player.task;
+    }
+
+    /**
+     * Plays one move every three ticks: select the first candy, select the
+     * second candy half a delay later, then wait a full delay
+     */
+    private class AutoPlayer implements Runnable {
+
+        private volatile GameLoop.Task task;
+        private int[] move;
+        private int phase;
+
+        @Override
+        public void run() {
+            if (gameBoard.isGameOver()) {
+                stop();
+                return;
+            }
+
+            switch (phase) {
+                case 0:
+                    if (gameBoard.isCascading()) {
+                        return;
                     }
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                    move = findBestMove(gameBoard.snapshot());
+                    if (move == null) {
+                        stop();
+                        return;
+                    }
+                    gameBoard.selectCandy(move[0], move[1]);
+                    phase = 1;
+                    break;
+                case 1:
+                    gameBoard.selectCandy(move[2], move[3]);
+                    phase = 2;
+                    break;
+                default:
+                    phase = 0;
+                    break;
             }
-        });
+        }
 
-        autoPlayThread.start();
-        return autoPlayThread;
+        private void stop() {
+            if (task != null) {
+                task.cancel();
+            }
+        }
     }
 }
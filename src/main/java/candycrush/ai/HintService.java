@@ -0,0 +1,331 @@
+package candycrush.ai;
+
+import candycrush.model.BoardSnapshot;
+import candycrush.util.ConfigManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Searches hints off the event dispatch thread and the game loop.
+ *
+ * A request returns a future at once. The search runs on a small shared
+ * pool with the {@link GameAI}'s current strategy and a deadline; an
+ * {@link GameAI.AnytimeStrategy} answers by then with the best move of
+ * the deepest search it finished. Whatever the strategy, the future is
+ * completed a short grace period after the deadline with the best move
+ * found so far, which is the greedy move if the search has not answered,
+ * for example because auto-play holds the strategy. A new request, or
+ * {@link #cancel()} when the player moves, cancels the pending one and
+ * stops its search.
+ *
+ * Once the board settles, {@link #precompute(BoardSnapshot)} searches the
+ * new position speculatively on a low-priority thread and caches the move
+ * against the position's hash. A request for that position is answered
+ * from the cache at once, or from the speculative search if it is already
+ * under way. {@link #invalidate()} drops both when the position changes.
+ * Precomputing can be turned off with the ai.hint.precompute property.
+ */
+public class HintService {
+
+    private static final Logger LOGGER = Logger.getLogger(
+        HintService.class.getName()
+    );
+
+    /** Time a hint search may take */
+    public static final long DEFAULT_BUDGET_MILLIS = 40;
+
+    /** Time past the budget after which the greedy move is answered */
+    private static final long GRACE_MILLIS = 5;
+
+    private static ExecutorService searchers;
+    private static ExecutorService precomputers;
+
+    private final GameAI ai;
+    private final long budgetMillis;
+    private final boolean precomputing;
+    private Request pending;
+    private Request speculative;
+    private long speculativeHash;
+    private boolean cached;
+    private long cachedHash;
+    private int[] cachedMove;
+
+    /**
+     * Create a service with the default budget
+     *
+     * @param ai AI whose strategy searches the hints
+     */
+    public HintService(GameAI ai) {
+        this(ai, DEFAULT_BUDGET_MILLIS);
+    }
+
+    /**
+     * Create a service
+     *
+     * @param ai AI whose strategy searches the hints
+     * @param budgetMillis Time a hint search may take in milliseconds
+     */
+    public HintService(GameAI ai, long budgetMillis) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException(
+                "Budget must not be negative: " + budgetMillis
+            );
+        }
+
+        this.ai = ai;
+        this.budgetMillis = budgetMillis;
+        this.precomputing = ConfigManager.getInstance()
+            .getBooleanProperty("ai.hint.precompute", true);
+    }
+
+    /**
+     * Returns the shared search threads, creating them on first use. Their
+     * number is the ai.hint.threads property, 2 by default.
+     *
+     * @return Threads that run the hint searches of all sessions
+     */
+    private static synchronized ExecutorService getSearchers() {
+        if (searchers == null) {
+            int threads = Math.max(
+                1,
+                ConfigManager.getInstance().getIntProperty("ai.hint.threads", 2)
+            );
+            searchers = Executors.newFixedThreadPool(
+                threads,
+                daemonThreads("hint-search-", Thread.NORM_PRIORITY)
+            );
+            LOGGER.info(
+                "Hint search started with " + threads + " thread(s)"
+            );
+        }
+        return searchers;
+    }
+
+    /**
+     * Returns the shared low-priority thread for speculative searches,
+     * creating it on first use
+     *
+     * @return Thread that precomputes the hints of all sessions
+     */
+    private static synchronized ExecutorService getPrecomputers() {
+        if (precomputers == null) {
+            precomputers = Executors.newSingleThreadExecutor(
+                daemonThreads("hint-precompute-", Thread.MIN_PRIORITY)
+            );
+        }
+        return precomputers;
+    }
+
+    /**
+     * Create a factory for numbered daemon threads
+     *
+     * @param prefix Thread name prefix
+     * @param priority Thread priority
+     * @return Thread factory
+     */
+    private static ThreadFactory daemonThreads(String prefix, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(
+                runnable,
+                prefix + count.incrementAndGet()
+            );
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+
+    /**
+     * Search a hint for a position, cancelling the pending request
+     *
+     * @param snapshot Position to search
+     * @return Future completed with [row1, col1, row2, col2], or null if
+     *         the position has no move, within the budget and grace period;
+     *         cancelled if the hint is no longer wanted
+     */
+    public CompletableFuture<int[]> request(BoardSnapshot snapshot) {
+        long hash = snapshot.getHash();
+        Request request = new Request();
+        Request running = null;
+        synchronized (this) {
+            if (pending != null) {
+                pending.future.cancel(false);
+            }
+            pending = request;
+
+            if (cached && cachedHash == hash) {
+                request.future.complete(copy(cachedMove));
+                return request.future;
+            }
+            if (speculative != null && speculativeHash == hash) {
+                if (speculative.started) {
+                    running = speculative;
+                } else {
+                    speculative.future.cancel(false);
+                    speculative = null;
+                }
+            }
+        }
+
+        if (running != null) {
+            int[] greedy = ai.findGreedyMove(snapshot);
+            running.future.thenAccept(move -> request.future.complete(move));
+            request.future.completeOnTimeout(
+                greedy,
+                budgetMillis + GRACE_MILLIS,
+                TimeUnit.MILLISECONDS
+            );
+            return request.future;
+        }
+
+        search(request, snapshot, getSearchers());
+        request.future.completeOnTimeout(
+            ai.findGreedyMove(snapshot),
+            budgetMillis + GRACE_MILLIS,
+            TimeUnit.MILLISECONDS
+        );
+        return request.future;
+    }
+
+    /**
+     * Search the hint of a settled position in the background and cache
+     * it, replacing the speculative search of an older position
+     *
+     * @param snapshot Position the board has settled on
+     */
+    public void precompute(BoardSnapshot snapshot) {
+        if (!precomputing) {
+            return;
+        }
+
+        long hash = snapshot.getHash();
+        Request request = new Request();
+        synchronized (this) {
+            if (cached && cachedHash == hash) {
+                return;
+            }
+            if (speculative != null) {
+                speculative.future.cancel(false);
+            }
+            cached = false;
+            speculative = request;
+            speculativeHash = hash;
+        }
+
+        request.future.thenAccept(move -> {
+            synchronized (this) {
+                if (speculative == request) {
+                    speculative = null;
+                    cached = true;
+                    cachedHash = hash;
+                    cachedMove = move;
+                }
+            }
+        });
+        search(request, snapshot, getPrecomputers());
+    }
+
+    /**
+     * Forget the cached hint and stop every search, since the position is
+     * changing
+     */
+    public void invalidate() {
+        cancel();
+        Request request;
+        synchronized (this) {
+            request = speculative;
+            speculative = null;
+            cached = false;
+            cachedMove = null;
+        }
+        if (request != null) {
+            request.future.cancel(false);
+        }
+    }
+
+    /**
+     * Run a request's search on a pool, within the budget from the moment
+     * it starts
+     */
+    private void search(
+        Request request,
+        BoardSnapshot snapshot,
+        ExecutorService pool
+    ) {
+        request.future.whenComplete((move, error) -> request.stopped = true);
+        pool.execute(() -> {
+            if (request.stopped) {
+                return;
+            }
+            request.started = true;
+            long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+            try {
+                int[] move = ai.findBestMove(
+                    snapshot,
+                    deadline,
+                    () -> request.stopped
+                );
+                request.future.complete(
+                    move != null ? move : ai.findGreedyMove(snapshot)
+                );
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Error searching hint", e);
+                request.future.complete(ai.findGreedyMove(snapshot));
+            }
+        });
+    }
+
+    private static int[] copy(int[] move) {
+        return move == null ? null : move.clone();
+    }
+
+    /**
+     * Cancel the pending request, if any, and stop its search
+     */
+    public void cancel() {
+        Request request;
+        synchronized (this) {
+            request = pending;
+            pending = null;
+        }
+        if (request != null) {
+            request.future.cancel(false);
+        }
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Check whether the hint of a position is cached
+     *
+     * @param hash Zobrist hash of the position
+     * @return true if a request for it is answered at once
+     */
+    public synchronized boolean isCached(long hash) {
+        return cached && cachedHash == hash;
+    }
+
+    /**
+     * One hint search: its future, whether a thread has picked it up and
+     * the flag it polls
+     */
+    private static final class Request {
+
+        private final CompletableFuture<int[]> future;
+        private volatile boolean started;
+        private volatile boolean stopped;
+
+        Request() {
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package candycrush.ai;
+
+import candycrush.model.BoardSnapshot;
+import candycrush.model.GameEngine;
+import candycrush.model.GameSeed;
+import candycrush.model.MoveResult;
+import candycrush.model.ScoreTable;
+import candycrush.util.ConfigManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Monte Carlo tree search over the next few moves, root-parallel on a
+ * fork/join pool.
+ *
+ * Every worker grows its own tree from the position with its own rollout
+ * engine and refill seed, so workers share nothing while they search and
+ * the playout rate grows with the number of cores. When all workers are
+ * done their visit counts for the first move are summed and the most
+ * visited swap is played.
+ *
+ * A playout restores the worker's engine to the position, which copies
+ * only the compact cell bytes, and plays a fixed number of moves with
+ * their full cascades and fresh refills. Inside the tree, moves are chosen
+ * by UCB1 among the swaps that are legal on the board actually reached,
+ * untried swaps first in the order {@link MoveEvaluator} ranks them. Past
+ * the tree, one of the few best ranked swaps is picked at random. A
+ * playout is worth the points scored over all its moves.
+ *
+ * A search stops after its playout count, at its deadline or when asked
+ * to stop, whichever comes first, and answers from the playouts run so
+ * far. Instances are not thread-safe.
+ */
+public class MctsStrategy implements GameAI.AnytimeStrategy {
+
+    private static final Logger LOGGER = Logger.getLogger(
+        MctsStrategy.class.getName()
+    );
+
+    public static final int DEFAULT_PLAYOUTS = 100_000;
+    public static final long DEFAULT_BUDGET_MILLIS = 100;
+    public static final int DEFAULT_HORIZON = 4;
+    public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+
+    /** Best ranked swaps a rollout picks from */
+    private static final int ROLLOUT_CHOICES = 3;
+
+    private static ForkJoinPool defaultPool;
+
+    private final ScoreTable table;
+    private final ForkJoinPool pool;
+    private final int playouts;
+    private final long budgetNanos;
+    private final int horizon;
+    private final double exploration;
+    private final long seed;
+
+    private long lastPlayouts;
+
+    /**
+     * Create a strategy on the shared search pool with the default
+     * playouts, budget and horizon
+     *
+     * @param table Scoring rules of the game
+     * @param seed Seed of the rollouts
+     */
+    public MctsStrategy(ScoreTable table, long seed) {
+        this(
+            table,
+            getDefaultPool(),
+            DEFAULT_PLAYOUTS,
+            DEFAULT_BUDGET_MILLIS,
+            DEFAULT_HORIZON,
+            DEFAULT_EXPLORATION,
+            seed
+        );
+    }
+
+    /**
+     * Create a strategy
+     *
+     * @param table Scoring rules of the game
+     * @param pool Pool to search on, one tree per unit of parallelism
+     * @param playouts Playouts per call across all workers, at least 1
+     * @param budgetMillis Time allowed per call in milliseconds
+     * @param horizon Moves played by each playout, at least 1
+     * @param exploration UCB1 exploration constant
+     * @param seed Seed of the rollouts
+     */
+    public MctsStrategy(
+        ScoreTable table,
+        ForkJoinPool pool,
+        int playouts,
+        long budgetMillis,
+        int horizon,
+        double exploration,
+        long seed
+    ) {
+        if (playouts < 1 || horizon < 1) {
+            throw new IllegalArgumentException(
+                "Playouts and horizon must be at least 1"
+            );
+        }
+
+        this.table = table;
+        this.pool = pool;
+        this.playouts = playouts;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.horizon = horizon;
+        this.exploration = exploration;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the shared search pool, creating it on first use. Its size
+     * is the ai.mcts.threads property, one thread per core by default.
+     *
+     * @return Pool shared by strategies created without one
+     */
+    private static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            int threads = Math.max(
+                1,
+                ConfigManager.getInstance()
+                    .getIntProperty(
+                        "ai.mcts.threads",
+                        Runtime.getRuntime().availableProcessors()
+                    )
+            );
+            defaultPool = new ForkJoinPool(threads);
+            LOGGER.info("MCTS pool started with " + threads + " thread(s)");
+        }
+        return defaultPool;
+    }
+
+    @Override
+    public int[] findMove(BoardSnapshot snapshot) {
+        return findMove(snapshot, System.nanoTime() + budgetNanos, () -> false);
+    }
+
+    @Override
+    public int[] findMove(
+        BoardSnapshot snapshot,
+        long deadline,
+        BooleanSupplier stopped
+    ) {
+        lastPlayouts = 0;
+        List<MoveEvaluator.ScoredMove> moves = new MoveEvaluator(table)
+            .rankMoves(snapshot);
+        if (moves.size() <= 1) {
+            return moves.isEmpty() ? null : moves.get(0).toArray();
+        }
+
+        int workers = pool.getParallelism();
+        SplittableRandom seeds = new SplittableRandom(
+            seed ^ snapshot.getHash()
+        );
+        List<Search> searches = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            searches.add(
+                new Search(
+                    snapshot,
+                    moves,
+                    new GameSeed(seeds.nextLong()),
+                    playouts / workers + (i < playouts % workers ? 1 : 0),
+                    deadline,
+                    stopped
+                )
+            );
+        }
+        pool.invoke(
+            ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(searches))
+        );
+
+        long[] visits = new long[moves.size()];
+        double[] totals = new double[moves.size()];
+        for (Search search : searches) {
+            lastPlayouts += search.count;
+            for (int i = 0; i < moves.size(); i++) {
+                Node child = search.root.children[i];
+                if (child != null) {
+                    visits[i] += child.visits;
+                    totals[i] += child.total;
+                }
+            }
+        }
+
+        int best = 0;
+        for (int i = 1; i < moves.size(); i++) {
+            if (
+                visits[i] > visits[best] ||
+                (visits[i] == visits[best] &&
+                    totals[i] * visits[best] > totals[best] * visits[i])
+            ) {
+                best = i;
+            }
+        }
+        return moves.get(best).toArray();
+    }
+
+    /**
+     * Get the number of playouts the last call ran on all workers
+     *
+     * @return Playout count
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public long getBudgetMillis() {
+        return budgetNanos / 1_000_000L;
+    }
+
+    /**
+     * Node of one worker's tree: a swap played after the moves on the path
+     * to it, whatever refills came before
+     */
+    private static final class Node {
+
+        private final int key;
+        private Node[] children;
+        private int childCount;
+        private long visits;
+        private double total;
+
+        Node(int key) {
+            this.key = key;
+            this.children = new Node[4];
+        }
+
+        /**
+         * Find the child for a swap
+         *
+         * @return Child node, or null if the swap was never tried here
+         */
+        Node find(int key) {
+            for (int i = 0; i < childCount; i++) {
+                if (children[i].key == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node add(int key) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, 2 * childCount);
+            }
+            Node child = new Node(key);
+            children[childCount++] = child;
+            return child;
+        }
+    }
+
+    /**
+     * One worker: grows a private tree with a private engine
+     */
+    private final class Search extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BoardSnapshot position;
+        private final List<MoveEvaluator.ScoredMove> rootMoves;
+        private final GameEngine engine;
+        private final MoveEvaluator evaluator;
+        private final MoveResult result;
+        private final Random random;
+        private final Node root;
+        private final List<Node> path;
+        private final int limit;
+        private final long deadline;
+        private final BooleanSupplier stopped;
+        private double maxValue;
+        private int count;
+
+        Search(
+            BoardSnapshot position,
+            List<MoveEvaluator.ScoredMove> rootMoves,
+            GameSeed seed,
+            int limit,
+            long deadline,
+            BooleanSupplier stopped
+        ) {
+            this.position = position;
+            this.rootMoves = rootMoves;
+            this.engine = new GameEngine(position, seed);
+            this.engine.setScoreTable(table);
+            this.engine.setParallelOps(null);
+            this.evaluator = new MoveEvaluator(table);
+            this.result = new MoveResult();
+            this.random = seed.aiStream();
+            this.root = new Node(-1);
+            this.path = new ArrayList<>(horizon + 1);
+            this.limit = limit;
+            this.deadline = deadline;
+            this.stopped = stopped;
+
+            // Root children line up with the ranked moves for merging
+            root.children = new Node[rootMoves.size()];
+            for (MoveEvaluator.ScoredMove move : rootMoves) {
+                root.add(move.getKey(position.getCols()));
+            }
+        }
+
+        @Override
+        protected void compute() {
+            while (
+                count < limit &&
+                System.nanoTime() - deadline < 0 &&
+                !stopped.getAsBoolean()
+            ) {
+                playout();
+                count++;
+            }
+        }
+
+        /**
+         * Run one playout from the position and back up its value
+         */
+        private void playout() {
+            engine.restore(position);
+            path.clear();
+            path.add(root);
+            Node node = root;
+
+            for (int depth = 0; depth < horizon; depth++) {
+                List<MoveEvaluator.ScoredMove> legal = depth == 0
+                    ? rootMoves
+                    : legalMoves();
+                if (legal.isEmpty()) {
+                    break;
+                }
+
+                MoveEvaluator.ScoredMove move;
+                if (node == null) {
+                    int choices = Math.min(ROLLOUT_CHOICES, legal.size());
+                    move = legal.get(random.nextInt(choices));
+                } else {
+                    move = legal.get(select(node, legal));
+                    Node child = node.find(move.getKey(position.getCols()));
+                    path.add(child);
+                    node = child.visits == 0 ? null : child;
+                }
+
+                engine.playMove(
+                    move.getRow1(),
+                    move.getCol1(),
+                    move.getRow2(),
+                    move.getCol2(),
+                    result
+                );
+            }
+
+            double value = engine.getScore() - position.getScore();
+            maxValue = Math.max(maxValue, value);
+            for (Node visited : path) {
+                visited.visits++;
+                visited.total += value;
+            }
+        }
+
+        /**
+         * Pick the swap to descend with among the legal ones: the best
+         * ranked untried one, else the one with the highest UCB1 value.
+         * Adds a child for every legal swap the node has not seen yet.
+         *
+         * @return Index of the swap in the legal list
+         */
+        private int select(Node node, List<MoveEvaluator.ScoredMove> legal) {
+            double scale = Math.max(1, maxValue);
+            double logVisits = Math.log(Math.max(1, node.visits));
+            int best = 0;
+            double bestValue = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < legal.size(); i++) {
+                int key = legal.get(i).getKey(position.getCols());
+                Node child = node.find(key);
+                if (child == null) {
+                    child = node.add(key);
+                }
+                if (child.visits == 0) {
+                    return i;
+                }
+
+                double value =
+                    child.total / child.visits / scale +
+                    exploration * Math.sqrt(logVisits / child.visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Rank the swaps of the engine's board, shuffling it first if it
+         * has none, as the game does
+         */
+        private List<MoveEvaluator.ScoredMove> legalMoves() {
+            List<MoveEvaluator.ScoredMove> legal = evaluator.rankMoves(
+                engine.snapshot()
+            );
+            if (legal.isEmpty() && engine.shuffle()) {
+                legal = evaluator.rankMoves(engine.snapshot());
+            }
+            return legal;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package candycrush.ai;
+
+import candycrush.model.BoardSnapshot;
+import candycrush.model.BoardState;
+import candycrush.model.ScoreTable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Scores every legal swap of a position in a single pass, without swapping
+ * anything.
+ *
+ * The evaluator reads the immutable cells of a {@link BoardSnapshot} and
+ * treats the two cells of a candidate swap as exchanged while it measures
+ * the runs through them. On a settled board any new run must pass through
+ * one of the two moved candies, so a swap is decided and scored by a few
+ * reads in each direction around them. A run scores the
+ * {@link ScoreTable} points of its candies plus its shape and length
+ * bonus; a pair of specials scores its combo bonus. Blasts and cascades
+ * that follow are not simulated.
+ *
+ * Instances hold the position being evaluated and are not thread-safe.
+ */
+public class MoveEvaluator {
+
+    private static final Comparator<ScoredMove> BY_SCORE = Comparator
+        .comparingInt(ScoredMove::getScore)
+        .reversed();
+
+    private final ScoreTable table;
+
+    private BoardSnapshot board;
+    private int rows;
+    private int cols;
+    private int first;
+    private int second;
+
+    /**
+     * A legal swap and the points its first step is worth
+     */
+    public static final class ScoredMove {
+
+        private final int row1;
+        private final int col1;
+        private final int row2;
+        private final int col2;
+        private final int score;
+
+        ScoredMove(int row1, int col1, int row2, int col2, int score) {
+            this.row1 = row1;
+            this.col1 = col1;
+            this.row2 = row2;
+            this.col2 = col2;
+            this.score = score;
+        }
+
+        /**
+         * Get the move in the form the game board and replays use
+         *
+         * @return New array [row1, col1, row2, col2]
+         */
+        public int[] toArray() {
+            return new int[] { row1, col1, row2, col2 };
+        }
+
+        public int getRow1() {
+            return row1;
+        }
+
+        public int getCol1() {
+            return col1;
+        }
+
+        public int getRow2() {
+            return row2;
+        }
+
+        public int getCol2() {
+            return col2;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Identify the swap by its first cell and direction
+         *
+         * @param cols Number of columns of the board
+         * @return Key unique among the swaps of the board
+         */
+        public int getKey(int cols) {
+            return 2 * (row1 * cols + col1) + (row2 != row1 ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return (
+                "(" +
+                row1 +
+                "," +
+                col1 +
+                ")-(" +
+                row2 +
+                "," +
+                col2 +
+                ") " +
+                score
+            );
+        }
+    }
+
+    /**
+     * Create an evaluator
+     *
+     * @param table Scoring rules
+     */
+    public MoveEvaluator(ScoreTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Score every legal swap of a settled position
+     *
+     * @param snapshot Position to evaluate
+     * @return Legal moves, best first; equal scores keep row-major order
+     */
+    public List<ScoredMove> rankMoves(BoardSnapshot snapshot) {
+        load(snapshot);
+        List<ScoredMove> moves = new ArrayList<>();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j + 1 < cols) {
+                    addIfLegal(moves, i, j, i, j + 1);
+                }
+                if (i + 1 < rows) {
+                    addIfLegal(moves, i, j, i + 1, j);
+                }
+            }
+        }
+
+        moves.sort(BY_SCORE);
+        return moves;
+    }
+
+    /**
+     * Score one swap of a settled position
+     *
+     * @param snapshot Position to evaluate
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell, right of or below the first
+     * @param col2 Column of second cell, right of or below the first
+     * @return Points of the swap's first step, or -1 if it is not legal
+     */
+    public int evaluate(
+        BoardSnapshot snapshot,
+        int row1,
+        int col1,
+        int row2,
+        int col2
+    ) {
+        load(snapshot);
+        return score(row1, col1, row2, col2);
+    }
+
+    private void load(BoardSnapshot snapshot) {
+        board = snapshot;
+        rows = snapshot.getRows();
+        cols = snapshot.getCols();
+    }
+
+    private void addIfLegal(
+        List<ScoredMove> moves,
+        int row1,
+        int col1,
+        int row2,
+        int col2
+    ) {
+        int score = score(row1, col1, row2, col2);
+        if (score >= 0) {
+            moves.add(new ScoredMove(row1, col1, row2, col2, score));
+        }
+    }
+
+    /**
+     * Score a swap of the loaded position
+     *
+     * @return Points, or -1 if the swap is not legal
+     */
+    private int score(int row1, int col1, int row2, int col2) {
+        first = row1 * cols + col1;
+        second = row2 * cols + col2;
+        byte cell1 = board.get(first);
+        byte cell2 = board.get(second);
+        int color1 = BoardState.colorOf(cell1);
+        int color2 = BoardState.colorOf(cell2);
+
+        if (color1 < 0 || color2 < 0) {
+            return -1;
+        }
+
+        int type1 = BoardState.typeOf(cell1);
+        int type2 = BoardState.typeOf(cell2);
+        if (type1 != 0 && type2 != 0) {
+            return table.getComboPoints(type1, type2);
+        }
+
+        if (color1 == color2) {
+            return -1;
+        }
+
+        int placed1 = placementScore(row1, col1, cell2);
+        int placed2 = placementScore(row2, col2, cell1);
+        if (placed1 < 0 && placed2 < 0) {
+            return -1;
+        }
+        return Math.max(0, placed1) + Math.max(0, placed2);
+    }
+
+    /**
+     * Score the runs a candy forms once it has moved into a cell
+     *
+     * @param row Row the candy moves to
+     * @param col Column the candy moves to
+     * @param moved Encoded candy
+     * @return Points of its runs, or -1 if it forms none
+     */
+    private int placementScore(int row, int col, byte moved) {
+        int color = BoardState.colorOf(moved);
+        int left = extent(row, col, 0, -1, color);
+        int right = extent(row, col, 0, 1, color);
+        int up = extent(row, col, -1, 0, color);
+        int down = extent(row, col, 1, 0, color);
+
+        boolean horizontal = 1 + left + right >= ScoreTable.MIN_RUN;
+        boolean vertical = 1 + up + down >= ScoreTable.MIN_RUN;
+        if (!horizontal && !vertical) {
+            return -1;
+        }
+
+        ScoreTable.Shape shape = horizontal && vertical
+            ? ScoreTable.Shape.CROSS
+            : ScoreTable.Shape.LINE;
+        int points = table.getCellPoints(BoardState.typeOf(moved));
+
+        if (horizontal) {
+            points +=
+                table.getRunPoints(shape, 1 + left + right) +
+                runCellPoints(row, col - left, 0, 1, left) +
+                runCellPoints(row, col + 1, 0, 1, right);
+        }
+        if (vertical) {
+            points +=
+                table.getRunPoints(shape, 1 + up + down) +
+                runCellPoints(row - up, col, 1, 0, up) +
+                runCellPoints(row + 1, col, 1, 0, down);
+        }
+
+        return points;
+    }
+
+    /**
+     * Count the cells of a color next to a cell in one direction, as they
+     * are after the swap
+     */
+    private int extent(int row, int col, int dr, int dc, int color) {
+        int count = 0;
+        int r = row + dr;
+        int c = col + dc;
+        while (
+            r >= 0 &&
+            r < rows &&
+            c >= 0 &&
+            c < cols &&
+            BoardState.colorOf(cellAfterSwap(r * cols + c)) == color
+        ) {
+            count++;
+            r += dr;
+            c += dc;
+        }
+        return count;
+    }
+
+    /**
+     * Sum the candy points of consecutive cells, as they are after the swap
+     */
+    private int runCellPoints(int row, int col, int dr, int dc, int length) {
+        int points = 0;
+        for (int k = 0; k < length; k++) {
+            byte cell = cellAfterSwap((row + k * dr) * cols + col + k * dc);
+            points += table.getCellPoints(BoardState.typeOf(cell));
+        }
+        return points;
+    }
+
+    private byte cellAfterSwap(int index) {
+        if (index == first) {
+            return board.get(second);
+        } else if (index == second) {
+            return board.get(first);
+        }
+        return board.get(index);
+    }
+}
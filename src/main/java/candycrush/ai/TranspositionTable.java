@@ -0,0 +1,302 @@
+package candycrush.ai;
+
+import candycrush.util.ConfigManager;
+import java.util.Arrays;
+
+/**
+ * Fixed-size cache of search results keyed by the 64-bit Zobrist hash of
+ * a position, for searches that reach the same position more than once.
+ *
+ * Entries live in parallel primitive arrays, so the table allocates
+ * nothing after construction and its memory is fixed by the byte budget
+ * it is created with. A hash maps to a bucket of {@link #BUCKET_SIZE}
+ * consecutive slots. Storing into a full bucket evicts its least useful
+ * entry: one not used since the oldest search, and among those of the
+ * same age the shallowest. A lookup that hits marks its entry as used by
+ * the current search, so the table approximates least-recently-used
+ * eviction without any linked structure.
+ *
+ * A stored move is an int chosen by the search, or {@link #NO_MOVE}.
+ * Hit, miss, store and eviction counts are kept for sizing the table.
+ * Instances are not thread-safe.
+ */
+public class TranspositionTable {
+
+    /** Slots a hash may be stored in */
+    public static final int BUCKET_SIZE = 4;
+
+    /** Bytes each slot takes: key, value, move and metadata */
+    public static final int ENTRY_BYTES = 8 + 8 + 4 + 4;
+
+    /** Move stored when a search has none to record */
+    public static final int NO_MOVE = -1;
+
+    /** Largest depth an entry can record */
+    public static final int MAX_DEPTH = 0xFF;
+
+    private static final int DEFAULT_MEGABYTES = 4;
+    private static final int USED = 1 << 16;
+    private static final int GENERATION_SHIFT = 8;
+
+    private final long[] keys;
+    private final double[] values;
+    private final int[] moves;
+    private final int[] meta;
+    private final int mask;
+
+    private int generation;
+    private int size;
+    private long hits;
+    private long misses;
+    private long stores;
+    private long evictions;
+
+    /**
+     * Create a table with the size in the ai.tt.megabytes property, 4 MB
+     * by default
+     */
+    public TranspositionTable() {
+        this(configuredBytes());
+    }
+
+    /**
+     * Create a table that uses at most the given memory for its entries
+     *
+     * @param maxBytes Memory budget in bytes; the slot count is the largest
+     *        power of two that fits
+     * @throws IllegalArgumentException If not even one bucket fits
+     */
+    public TranspositionTable(long maxBytes) {
+        long maxSlots = Math.min(maxBytes / ENTRY_BYTES, 1L << 30);
+        if (maxSlots < BUCKET_SIZE) {
+            throw new IllegalArgumentException(
+                "Transposition table needs at least " +
+                BUCKET_SIZE * ENTRY_BYTES +
+                " bytes"
+            );
+        }
+
+        int capacity = Integer.highestOneBit((int) maxSlots);
+        this.keys = new long[capacity];
+        this.values = new double[capacity];
+        this.moves = new int[capacity];
+        this.meta = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static long configuredBytes() {
+        int megabytes = ConfigManager.getInstance()
+            .getIntProperty("ai.tt.megabytes", DEFAULT_MEGABYTES);
+        return Math.max(1, megabytes) * 1024L * 1024L;
+    }
+
+    /**
+     * Start a new search: entries not used from now on age and become the
+     * first to be evicted
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Find the entry of a position, counting a hit or a miss
+     *
+     * @param hash Zobrist hash of the position
+     * @return Slot of the entry, or -1 if the position is not stored
+     */
+    public int find(long hash) {
+        int slot = locate(hash);
+        if (slot < 0) {
+            misses++;
+        } else {
+            hits++;
+            meta[slot] = pack(depthAt(slot));
+        }
+        return slot;
+    }
+
+    /**
+     * Store the result of searching a position, replacing its old entry
+     * or evicting the least useful entry of its bucket
+     *
+     * @param hash Zobrist hash of the position
+     * @param depth Depth the position was searched to, 0 to
+     *        {@link #MAX_DEPTH}
+     * @param value Value the search found
+     * @param move Best move the search found, or {@link #NO_MOVE}
+     */
+    public void store(long hash, int depth, double value, int move) {
+        if (depth < 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth out of range: " + depth);
+        }
+
+        int slot = locate(hash);
+        if (slot < 0) {
+            slot = victim(hash);
+            if ((meta[slot] & USED) == 0) {
+                size++;
+            } else {
+                evictions++;
+            }
+        }
+
+        keys[slot] = hash;
+        values[slot] = value;
+        moves[slot] = move;
+        meta[slot] = pack(depth);
+        stores++;
+    }
+
+    /**
+     * Find a position's slot without touching the counters
+     */
+    private int locate(long hash) {
+        int first = bucket(hash);
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            int slot = (first + i) & mask;
+            if ((meta[slot] & USED) != 0 && keys[slot] == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pick the slot of a bucket to overwrite: an empty one if any, else the
+     * one unused for the most searches, the shallowest on a tie
+     */
+    private int victim(long hash) {
+        int first = bucket(hash);
+        int best = first;
+        int bestAge = -1;
+        int bestDepth = Integer.MAX_VALUE;
+
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            int slot = (first + i) & mask;
+            if ((meta[slot] & USED) == 0) {
+                return slot;
+            }
+
+            int stamp = (meta[slot] >>> GENERATION_SHIFT) & 0xFF;
+            int age = (generation - stamp) & 0xFF;
+            int depth = depthAt(slot);
+            if (age > bestAge || (age == bestAge && depth < bestDepth)) {
+                best = slot;
+                bestAge = age;
+                bestDepth = depth;
+            }
+        }
+        return best;
+    }
+
+    private int bucket(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int pack(int depth) {
+        return USED | (generation << GENERATION_SHIFT) | depth;
+    }
+
+    /**
+     * Forget every entry; the counters are kept
+     */
+    public void clear() {
+        Arrays.fill(meta, 0);
+        size = 0;
+    }
+
+    /**
+     * Reset the hit, miss, store and eviction counts
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        stores = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Get the depth of a found entry
+     *
+     * @param slot Slot returned by {@link #find(long)}
+     * @return Depth the position was searched to
+     */
+    public int depthAt(int slot) {
+        return meta[slot] & MAX_DEPTH;
+    }
+
+    /**
+     * Get the value of a found entry
+     *
+     * @param slot Slot returned by {@link #find(long)}
+     * @return Value the search found
+     */
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Get the best move of a found entry
+     *
+     * @param slot Slot returned by {@link #find(long)}
+     * @return Move the search stored, or {@link #NO_MOVE}
+     */
+    public int moveAt(int slot) {
+        return moves[slot];
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Get the memory the entries take
+     *
+     * @return Bytes
+     */
+    public long getMemoryBytes() {
+        return (long) keys.length * ENTRY_BYTES;
+    }
+
+    /**
+     * Get the number of stored entries
+     *
+     * @return Occupied slots
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "TranspositionTable[" +
+            size +
+            "/" +
+            keys.length +
+            " entries, " +
+            hits +
+            " hits, " +
+            misses +
+            " misses, " +
+            evictions +
+            " evictions]"
+        );
+    }
+}
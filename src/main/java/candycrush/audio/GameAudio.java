@@ -0,0 +1,47 @@
+package candycrush.audio;
+
+import candycrush.model.EventBatch;
+import candycrush.model.GameEvent;
+import candycrush.model.GameEventBus;
+
+/**
+ * Plays the sound effects of one game board's events.
+ *
+ * Subscribes to the board's {@link GameEventBus} and, each time it is
+ * polled, plays every effect at most once, so a long cascade does not
+ * stack dozens of identical clips.
+ */
+public class GameAudio {
+
+    private final GameEventBus.Subscription subscription;
+
+    /**
+     * Create a sound player for a board's events
+     *
+     * @param events Event bus of the board
+     */
+    public GameAudio(GameEventBus events) {
+        this.subscription = events.subscribe();
+    }
+
+    /**
+     * Play the sounds of the events published since the last poll
+     */
+    public void poll() {
+        EventBatch batch = subscription.poll();
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        AudioManager audio = AudioManager.getInstance();
+        if (batch.contains(GameEvent.SELECT)) {
+            audio.playSound(AudioManager.SOUND_SELECT);
+        }
+        if (batch.contains(GameEvent.SWAP)) {
+            audio.playSound(AudioManager.SOUND_MATCH);
+        }
+        if (batch.contains(GameEvent.SPECIAL)) {
+            audio.playSound(AudioManager.SOUND_SPECIAL);
+        }
+    }
+}
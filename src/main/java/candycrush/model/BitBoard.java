@@ -0,0 +1,493 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Bitboard representation of the candy grid.
+ * Keeps one bit mask per candy color and detects horizontal and vertical
+ * runs with word-parallel shift-and-AND operations instead of walking
+ * candy objects cell by cell.
+ *
+ * Each row occupies {@link #getWordsPerRow()} consecutive longs and column
+ * c of a row lives in bit (c % 64) of word (c / 64). Match masks returned
+ * by this class use the same layout.
+ */
+public class BitBoard {
+
+    private final int rows;
+    private final int cols;
+    private final int wordsPerRow;
+    private final long[][] colorMasks;
+    private final long[] columnScratch;
+
+    /**
+     * Create an empty bitboard
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     * @param colorCount Number of distinct candy colors
+     */
+    public BitBoard(int rows, int cols, int colorCount) {
+        this.rows = rows;
+        this.cols = cols;
+        this.wordsPerRow = (cols + 63) >>> 6;
+        this.colorMasks = new long[colorCount][rows * wordsPerRow];
+        this.columnScratch = new long[wordsPerRow];
+    }
+
+    /**
+     * Create a copy of another bitboard
+     *
+     * @param other Bitboard to copy
+     */
+    public BitBoard(BitBoard other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.wordsPerRow = other.wordsPerRow;
+        this.colorMasks = new long[other.colorMasks.length][];
+        for (int i = 0; i < colorMasks.length; i++) {
+            colorMasks[i] = other.colorMasks[i].clone();
+        }
+        this.columnScratch = new long[wordsPerRow];
+    }
+
+    /**
+     * Set the color of a cell, replacing any previous color
+     *
+     * @param row Row position
+     * @param col Column position
+     * @param color Color index
+     */
+    public void set(int row, int col, int color) {
+        clear(row, col);
+        int word = row * wordsPerRow + (col >>> 6);
+        colorMasks[color][word] |= 1L << col;
+    }
+
+    /**
+     * Mark a cell as empty
+     *
+     * @param row Row position
+     * @param col Column position
+     */
+    public void clear(int row, int col) {
+        int word = row * wordsPerRow + (col >>> 6);
+        long keep = ~(1L << col);
+        for (long[] mask : colorMasks) {
+            mask[word] &= keep;
+        }
+    }
+
+    /**
+     * Mark every cell as empty
+     */
+    public void clearAll() {
+        for (long[] mask : colorMasks) {
+            Arrays.fill(mask, 0L);
+        }
+    }
+
+    /**
+     * Overwrite one word of a color's plane, for rebuilding the bitboard
+     * word by word; callers keep the planes disjoint
+     *
+     * @param color Color index
+     * @param word Word index in bitboard layout
+     * @param bits Cells of that color in the word
+     */
+    void setWord(int color, int word, long bits) {
+        colorMasks[color][word] = bits;
+    }
+
+    /**
+     * Get the occupied cells of one word, whatever their color
+     *
+     * @param word Word index in bitboard layout
+     * @return Bits of the non-empty cells in the word
+     */
+    long occupiedWord(int word) {
+        long bits = 0L;
+        for (long[] plane : colorMasks) {
+            bits |= plane[word];
+        }
+        return bits;
+    }
+
+    /**
+     * Get the color of a cell
+     *
+     * @param row Row position
+     * @param col Column position
+     * @return Color index, or -1 if the cell is empty
+     */
+    public int colorAt(int row, int col) {
+        int word = row * wordsPerRow + (col >>> 6);
+        long bit = 1L << col;
+        for (int color = 0; color < colorMasks.length; color++) {
+            if ((colorMasks[color][word] & bit) != 0) {
+                return color;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether the board contains at least one run of three
+     *
+     * @return true if any horizontal or vertical match exists
+     */
+    public boolean hasMatch() {
+        for (long[] mask : colorMasks) {
+            for (int row = 0; row < rows; row++) {
+                int base = row * wordsPerRow;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    if (horizontalStarts(mask, base, w) != 0) {
+                        return true;
+                    }
+                }
+            }
+
+            for (int row = 0; row + 2 < rows; row++) {
+                int base = row * wordsPerRow;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    long start =
+                        mask[base + w] &
+                        mask[base + wordsPerRow + w] &
+                        mask[base + 2 * wordsPerRow + w];
+                    if (start != 0) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find every cell that is part of a horizontal or vertical run of three
+     * or more
+     *
+     * @return Match mask in the bitboard word layout
+     */
+    public long[] findMatches() {
+        long[] matches = newMask();
+        findMatches(matches);
+        return matches;
+    }
+
+    /**
+     * Find every matched cell and store the result in the given mask
+     *
+     * @param matches Mask to overwrite, sized by {@link #newMask()}
+     */
+    public void findMatches(long[] matches) {
+        findMatches(matches, 0, rows);
+    }
+
+    /**
+     * Find the matched cells of a band of rows. Only the band's words of the
+     * mask are written, so disjoint bands can be scanned concurrently into
+     * the same mask.
+     *
+     * @param matches Mask whose band is overwritten, sized by {@link #newMask()}
+     * @param fromRow First row of the band
+     * @param toRow Row after the last row of the band
+     */
+    public void findMatches(long[] matches, int fromRow, int toRow) {
+        Arrays.fill(matches, fromRow * wordsPerRow, toRow * wordsPerRow, 0L);
+
+        for (long[] mask : colorMasks) {
+            for (int row = fromRow; row < toRow; row++) {
+                int base = row * wordsPerRow;
+                long carry1 = 0;
+                long carry2 = 0;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    long start = horizontalStarts(mask, base, w);
+                    long vertical = 0;
+                    if (row + 2 < rows) {
+                        vertical |=
+                            mask[base + w] &
+                            mask[base + wordsPerRow + w] &
+                            mask[base + 2 * wordsPerRow + w];
+                    }
+                    if (row >= 1 && row + 1 < rows) {
+                        vertical |=
+                            mask[base - wordsPerRow + w] &
+                            mask[base + w] &
+                            mask[base + wordsPerRow + w];
+                    }
+                    if (row >= 2) {
+                        vertical |=
+                            mask[base - 2 * wordsPerRow + w] &
+                            mask[base - wordsPerRow + w] &
+                            mask[base + w];
+                    }
+                    matches[base + w] |=
+                        start |
+                        (start << 1) |
+                        (start << 2) |
+                        carry1 |
+                        carry2 |
+                        vertical;
+                    carry1 = start >>> 63;
+                    carry2 = start >>> 62;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find matched cells by rescanning only the lines recorded in a dirty
+     * region. Dirty rows are scanned horizontally and dirty columns
+     * vertically, each from two cells before the first touched cell to the
+     * last one, and runs that leave that window are followed to their ends.
+     *
+     * The result equals a full scan as long as the board had no matches
+     * before the recorded changes, which holds between cascade steps.
+     *
+     * @param region Cells changed since the board was last stable
+     * @param matches Mask to overwrite, sized by {@link #newMask()}
+     */
+    public void findMatches(DirtyRegion region, long[] matches) {
+        if (region.isAll()) {
+            findMatches(matches);
+            return;
+        }
+
+        Arrays.fill(matches, 0L);
+
+        if (cols >= 3) {
+            for (int i = 0; i < region.getDirtyRowCount(); i++) {
+                int row = region.getDirtyRow(i);
+                int first = Math.max(0, region.getRowMin(row) - 2);
+                int last = Math.min(cols - 3, region.getRowMax(row));
+                if (first > last) {
+                    continue;
+                }
+                for (long[] mask : colorMasks) {
+                    scanRowWindow(mask, row, first, last, matches);
+                }
+            }
+        }
+
+        if (rows >= 3 && region.getDirtyColCount() > 0) {
+            Arrays.fill(columnScratch, 0L);
+            int top = rows;
+            int bottom = -1;
+            for (int i = 0; i < region.getDirtyColCount(); i++) {
+                int col = region.getDirtyCol(i);
+                columnScratch[col >>> 6] |= 1L << col;
+                top = Math.min(top, region.getColMin(col));
+                bottom = Math.max(bottom, region.getColMax(col));
+            }
+
+            int first = Math.max(0, top - 2);
+            int last = Math.min(rows - 3, bottom);
+            if (first <= last) {
+                for (long[] mask : colorMasks) {
+                    scanColumnWindow(mask, columnScratch, first, last, matches);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark horizontal runs of one color whose first triple starts between
+     * two columns of a row, following runs that extend past the window
+     */
+    private void scanRowWindow(
+        long[] mask,
+        int row,
+        int first,
+        int last,
+        long[] matches
+    ) {
+        int base = row * wordsPerRow;
+        boolean found = false;
+
+        for (int w = first >>> 6; w <= last >>> 6; w++) {
+            int lo = Math.max(0, first - (w << 6));
+            int hi = Math.min(63, last - (w << 6));
+            long window = (-1L << lo) & (-1L >>> (63 - hi));
+            long start = horizontalStarts(mask, base, w) & window;
+            if (start == 0) {
+                continue;
+            }
+
+            found = true;
+            matches[base + w] |= start | (start << 1) | (start << 2);
+            if (w + 1 < wordsPerRow) {
+                matches[base + w + 1] |= (start >>> 63) | (start >>> 62);
+            }
+        }
+
+        if (!found) {
+            return;
+        }
+
+        if (isStart(mask, row, first)) {
+            for (int col = first - 1; col >= 0 && isSet(mask, row, col); col--) {
+                matches[base + (col >>> 6)] |= 1L << col;
+            }
+        }
+
+        if (isStart(mask, row, last)) {
+            for (
+                int col = last + 3;
+                col < cols && isSet(mask, row, col);
+                col++
+            ) {
+                matches[base + (col >>> 6)] |= 1L << col;
+            }
+        }
+    }
+
+    /**
+     * Mark vertical runs of one color in the selected columns whose first
+     * triple starts between two rows, following runs past the window
+     */
+    private void scanColumnWindow(
+        long[] mask,
+        long[] columns,
+        int first,
+        int last,
+        long[] matches
+    ) {
+        for (int row = first; row <= last; row++) {
+            int base = row * wordsPerRow;
+            for (int w = 0; w < wordsPerRow; w++) {
+                if (columns[w] == 0) {
+                    continue;
+                }
+
+                long start =
+                    mask[base + w] &
+                    mask[base + wordsPerRow + w] &
+                    mask[base + 2 * wordsPerRow + w] &
+                    columns[w];
+                if (start == 0) {
+                    continue;
+                }
+
+                matches[base + w] |= start;
+                matches[base + wordsPerRow + w] |= start;
+                matches[base + 2 * wordsPerRow + w] |= start;
+
+                if (row == first) {
+                    long run = start;
+                    for (int r = row - 1; r >= 0 && run != 0; r--) {
+                        run &= mask[r * wordsPerRow + w];
+                        matches[r * wordsPerRow + w] |= run;
+                    }
+                }
+
+                if (row == last) {
+                    long run = start;
+                    for (int r = row + 3; r < rows && run != 0; r++) {
+                        run &= mask[r * wordsPerRow + w];
+                        matches[r * wordsPerRow + w] |= run;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether a horizontal triple of one color starts at a cell
+     */
+    private boolean isStart(long[] mask, int row, int col) {
+        return (
+            isSet(mask, row, col) &&
+            isSet(mask, row, col + 1) &&
+            isSet(mask, row, col + 2)
+        );
+    }
+
+    /**
+     * Allocate an empty mask with this board's word layout
+     *
+     * @return Zeroed mask
+     */
+    public long[] newMask() {
+        return new long[rows * wordsPerRow];
+    }
+
+    /**
+     * Check whether a cell is set in a mask
+     *
+     * @param mask Mask in this board's word layout
+     * @param row Row position
+     * @param col Column position
+     * @return true if the cell's bit is set
+     */
+    public boolean isSet(long[] mask, int row, int col) {
+        return (mask[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Set a cell's bit in a mask
+     *
+     * @param mask Mask in this board's word layout
+     * @param row Row position
+     * @param col Column position
+     */
+    public void mark(long[] mask, int row, int col) {
+        mask[row * wordsPerRow + (col >>> 6)] |= 1L << col;
+    }
+
+    /**
+     * Count the cells set in a mask
+     *
+     * @param mask Mask to count
+     * @return Number of set bits
+     */
+    public static int count(long[] mask) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Check whether a mask has no cells set
+     *
+     * @param mask Mask to test
+     * @return true if every bit is clear
+     */
+    public static boolean isEmpty(long[] mask) {
+        for (long word : mask) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the bits of a row word where a horizontal run of three starts
+     */
+    private long horizontalStarts(long[] mask, int base, int w) {
+        long word = mask[base + w];
+        long next = w + 1 < wordsPerRow ? mask[base + w + 1] : 0L;
+        long shift1 = (word >>> 1) | (next << 63);
+        long shift2 = (word >>> 2) | (next << 62);
+        return word & shift1 & shift2;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    public int getColorCount() {
+        return colorMasks.length;
+    }
+}
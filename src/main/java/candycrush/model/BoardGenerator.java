@@ -0,0 +1,227 @@
+package candycrush.model;
+
+import java.util.Random;
+
+/**
+ * Generates starting boards without rejection sampling.
+ *
+ * Cells are filled in row-major order and each cell draws its color
+ * uniformly from the colors that would not complete a run with the two
+ * cells to its left or the two cells above it, so the board never contains
+ * a match and every cell is drawn exactly once. If the result offers fewer
+ * than the requested number of legal swaps, "XX_X" shapes are planted at
+ * random places, each checked locally so no planting can create a match.
+ * Generation cost is linear in the number of cells.
+ */
+public class BoardGenerator {
+
+    public static final int DEFAULT_MIN_MOVES = 3;
+
+    private static final int PLANT_ROUNDS = 3;
+    private static final int[] PLANT_OFFSETS = { 0, 1, 3 };
+
+    private final int colorCount;
+    private final int minValidMoves;
+
+    /**
+     * Create a generator
+     *
+     * @param colorCount Number of candy colors, at least 3
+     * @param minValidMoves Number of legal swaps every board should offer
+     */
+    public BoardGenerator(int colorCount, int minValidMoves) {
+        if (colorCount < 3) {
+            throw new IllegalArgumentException(
+                "At least 3 colors are needed to avoid matches, got " +
+                colorCount
+            );
+        }
+        this.colorCount = colorCount;
+        this.minValidMoves = minValidMoves;
+    }
+
+    /**
+     * Fill every cell of a board with simple candies, leaving no matches and
+     * at least the configured number of legal swaps when the board size
+     * allows it
+     *
+     * @param state Board to overwrite
+     * @param random Source of colors and planting positions
+     * @return Number of legal swaps on the generated board
+     */
+    public int generate(BoardState state, Random random) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                state.set(
+                    i,
+                    j,
+                    BoardState.encode(
+                        Candy.Type.SIMPLE.ordinal(),
+                        pickColor(state, i, j, random)
+                    )
+                );
+            }
+        }
+
+        int validMoves = MoveGenerator.countValidMoves(state);
+
+        for (
+            int round = 0;
+            round < PLANT_ROUNDS && validMoves < minValidMoves;
+            round++
+        ) {
+            int attempts = 4 * (minValidMoves - validMoves) + rows + cols;
+            int planted = 0;
+            for (
+                int attempt = 0;
+                attempt < attempts && planted < minValidMoves - validMoves;
+                attempt++
+            ) {
+                if (plantMove(state, random)) {
+                    planted++;
+                }
+            }
+            validMoves = MoveGenerator.countValidMoves(state);
+        }
+
+        state.getDirtyRegion().clear();
+        return validMoves;
+    }
+
+    /**
+     * Pick a color for a cell that does not complete a run with the two
+     * cells to its left or the two cells above it
+     */
+    private int pickColor(BoardState state, int row, int col, Random random) {
+        int allowed = (1 << colorCount) - 1;
+
+        if (col >= 2) {
+            int left = BoardState.colorOf(state.get(row, col - 1));
+            int left2 = BoardState.colorOf(state.get(row, col - 2));
+            if (left >= 0 && left == left2) {
+                allowed &= ~(1 << left);
+            }
+        }
+
+        if (row >= 2) {
+            int up = BoardState.colorOf(state.get(row - 1, col));
+            int up2 = BoardState.colorOf(state.get(row - 2, col));
+            if (up >= 0 && up == up2) {
+                allowed &= ~(1 << up);
+            }
+        }
+
+        int pick = random.nextInt(Integer.bitCount(allowed));
+        for (int i = 0; i < pick; i++) {
+            allowed &= allowed - 1;
+        }
+        return Integer.numberOfTrailingZeros(allowed);
+    }
+
+    /**
+     * Try to plant an "XX_X" shape, horizontal or vertical, at a random
+     * place; the last X can then be swapped into the gap
+     *
+     * @return true if the shape was planted without creating a match
+     */
+    private boolean plantMove(BoardState state, Random random) {
+        boolean horizontal = random.nextBoolean();
+        int rows = state.getRows();
+        int cols = state.getCols();
+        int spanRows = horizontal ? 1 : 4;
+        int spanCols = horizontal ? 4 : 1;
+
+        if (rows < spanRows || cols < spanCols) {
+            return false;
+        }
+
+        int row = random.nextInt(rows - spanRows + 1);
+        int col = random.nextInt(cols - spanCols + 1);
+        int dr = horizontal ? 0 : 1;
+        int dc = horizontal ? 1 : 0;
+
+        int gapColor = BoardState.colorOf(
+            state.get(row + 2 * dr, col + 2 * dc)
+        );
+        int color = random.nextInt(colorCount);
+        if (color == gapColor) {
+            color = (color + 1) % colorCount;
+        }
+
+        byte[] saved = new byte[PLANT_OFFSETS.length];
+        byte candy = BoardState.encode(Candy.Type.SIMPLE.ordinal(), color);
+
+        for (int k = 0; k < PLANT_OFFSETS.length; k++) {
+            int r = row + PLANT_OFFSETS[k] * dr;
+            int c = col + PLANT_OFFSETS[k] * dc;
+            saved[k] = state.get(r, c);
+            state.set(r, c, candy);
+
+            if (hasRunThrough(state, r, c)) {
+                for (int undo = k; undo >= 0; undo--) {
+                    state.set(
+                        row + PLANT_OFFSETS[undo] * dr,
+                        col + PLANT_OFFSETS[undo] * dc,
+                        saved[undo]
+                    );
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether a cell is part of a horizontal or vertical run of three
+     */
+    private boolean hasRunThrough(BoardState state, int row, int col) {
+        int color = BoardState.colorOf(state.get(row, col));
+        return (
+            1 +
+                countSame(state, row, col, 0, -1, color) +
+                countSame(state, row, col, 0, 1, color) >=
+            3 ||
+            1 +
+                countSame(state, row, col, -1, 0, color) +
+                countSame(state, row, col, 1, 0, color) >=
+            3
+        );
+    }
+
+    /**
+     * Count consecutive cells of a color starting next to a cell
+     */
+    private int countSame(
+        BoardState state,
+        int row,
+        int col,
+        int dr,
+        int dc,
+        int color
+    ) {
+        int count = 0;
+        int r = row + dr;
+        int c = col + dc;
+        while (
+            state.isValidPosition(r, c) &&
+            BoardState.colorOf(state.get(r, c)) == color
+        ) {
+            count++;
+            r += dr;
+            c += dc;
+        }
+        return count;
+    }
+
+    public int getColorCount() {
+        return colorCount;
+    }
+
+    public int getMinValidMoves() {
+        return minValidMoves;
+    }
+}
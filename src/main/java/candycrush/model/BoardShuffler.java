@@ -0,0 +1,426 @@
+package candycrush.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Redistributes the candies already on a board so that it holds no match
+ * and offers at least one legal swap.
+ *
+ * The candies are gathered into one pool and shuffled with Fisher-Yates.
+ * Cells are then dealt from the pool in row-major order; a candy that would
+ * complete a run with the two cells to its left or above is exchanged for
+ * the next pooled candy that would not, which is almost always a step or
+ * two ahead. When none is left, an earlier candy is moved into the cell and
+ * the pooled one goes to that candy's old cell. A legal swap is finally
+ * planted by swapping candies of one color into an "XX_X" shape. The deal
+ * goes into a fresh array that the board adopts in one bulk rebuild of its
+ * bitboard and hash. Only when a color dominates so much that runs cannot
+ * be avoided, or no move can be planted or found, is the attempt repeated,
+ * up to a fixed number of times. Every attempt is linear in the number of
+ * cells, and the candies themselves, including special ones, are only
+ * moved around.
+ *
+ * Instances hold scratch buffers and are not thread-safe.
+ */
+public class BoardShuffler {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    private static final int LOOKAHEAD = 64;
+    private static final int REPAIR_TRIES = 64;
+    private static final int PLANT_TRIES = 16;
+    private static final int FIND_TRIES = 16;
+    private static final int[] PLANT_OFFSETS = { 0, 1, 3 };
+
+    private final int maxAttempts;
+    private byte[] pool;
+    private int poolSize;
+    private int next;
+
+    /**
+     * Create a shuffler
+     *
+     * @param maxAttempts Number of deals tried before giving up
+     */
+    public BoardShuffler(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        this.pool = new byte[0];
+    }
+
+    /**
+     * Shuffle the candies of a board in place. Empty cells stay empty.
+     *
+     * @param state Board to shuffle
+     * @param random Source of the permutation
+     * @return true if the board now has no match and at least one legal
+     *         swap; false if every attempt failed and the board was put
+     *         back as it was
+     */
+    public boolean shuffle(BoardState state, Random random) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        BoardSnapshot original = state.snapshot(0);
+        fillPool(original);
+
+        boolean solved = false;
+        boolean changed = false;
+        for (int attempt = 0; attempt < maxAttempts && !solved; attempt++) {
+            shufflePool(random);
+            byte[] dealt = new byte[rows * cols];
+            if (!deal(original, dealt, random)) {
+                continue;
+            }
+
+            boolean planted = plantMove(dealt, rows, cols, random);
+            state.load(dealt);
+            changed = true;
+            solved = planted || MoveGenerator.hasValidMove(state);
+        }
+
+        if (!solved && changed) {
+            state.restore(original);
+        }
+
+        state.getDirtyRegion().clear();
+        return solved;
+    }
+
+    /**
+     * Gather a board's candies into the pool
+     */
+    private void fillPool(BoardSnapshot board) {
+        int cells = board.getRows() * board.getCols();
+        if (pool.length < cells) {
+            pool = new byte[cells];
+        }
+
+        poolSize = 0;
+        for (int i = 0; i < cells; i++) {
+            byte cell = board.get(i);
+            if (cell != BoardState.EMPTY) {
+                pool[poolSize++] = cell;
+            }
+        }
+    }
+
+    /**
+     * Shuffle the pool with Fisher-Yates and rewind it
+     */
+    private void shufflePool(Random random) {
+        for (int i = poolSize - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte tmp = pool[i];
+            pool[i] = pool[j];
+            pool[j] = tmp;
+        }
+        next = 0;
+    }
+
+    /**
+     * Deal the pool onto the cells that are not empty on the original
+     * board without completing a run
+     *
+     * @param original Board whose empty cells are kept
+     * @param dealt Zeroed array to deal into
+     * @return false if some cell could not be filled without a run
+     */
+    private boolean deal(BoardSnapshot original, byte[] dealt, Random random) {
+        int rows = original.getRows();
+        int cols = original.getCols();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int index = i * cols + j;
+                if (original.get(index) == BoardState.EMPTY) {
+                    continue;
+                }
+
+                int banned = 0;
+                if (j >= 2) {
+                    banned |= runColor(dealt[index - 1], dealt[index - 2]);
+                }
+                if (i >= 2) {
+                    banned |= runColor(
+                        dealt[index - cols],
+                        dealt[index - 2 * cols]
+                    );
+                }
+
+                if (takeAllowed(banned)) {
+                    dealt[index] = pool[next++];
+                } else if (!repair(dealt, rows, cols, index, random)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the color bit two cells would complete a run of
+     *
+     * @return Bit of their shared color, or 0 if they differ or are empty
+     */
+    private static int runColor(byte first, byte second) {
+        int color = BoardState.colorOf(first);
+        return color >= 0 && color == BoardState.colorOf(second)
+            ? 1 << color
+            : 0;
+    }
+
+    /**
+     * Bring the next pooled candy whose color is not banned to the front
+     * of what is left of the pool
+     *
+     * @param banned Bits of the colors that would complete a run
+     * @return true if one was found within the lookahead
+     */
+    private boolean takeAllowed(int banned) {
+        int limit = Math.min(poolSize, next + LOOKAHEAD);
+        for (int p = next; p < limit; p++) {
+            if ((banned & (1 << BoardState.colorOf(pool[p]))) == 0) {
+                byte tmp = pool[p];
+                pool[p] = pool[next];
+                pool[next] = tmp;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fill a cell for which no pooled candy fits by moving an already dealt
+     * candy into it and giving the next pooled candy that candy's old cell
+     *
+     * @return true if a cell was found where that creates no run
+     */
+    private boolean repair(
+        byte[] dealt,
+        int rows,
+        int cols,
+        int index,
+        Random random
+    ) {
+        if (index == 0) {
+            return false;
+        }
+
+        byte pooled = pool[next];
+        for (int t = 0; t < REPAIR_TRIES; t++) {
+            int other = random.nextInt(index);
+            byte moved = dealt[other];
+            if (moved == BoardState.EMPTY) {
+                continue;
+            }
+
+            dealt[index] = moved;
+            dealt[other] = pooled;
+            if (
+                !hasRunThrough(dealt, rows, cols, index) &&
+                !hasRunThrough(dealt, rows, cols, other)
+            ) {
+                next++;
+                return true;
+            }
+
+            dealt[other] = moved;
+            dealt[index] = BoardState.EMPTY;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check whether a cell of a dealt array is part of a run of three
+     */
+    private static boolean hasRunThrough(
+        byte[] cells,
+        int rows,
+        int cols,
+        int index
+    ) {
+        int color = BoardState.colorOf(cells[index]);
+        int row = index / cols;
+        int col = index % cols;
+        return (
+            1 +
+                countSame(cells, rows, cols, row, col, 0, -1, color) +
+                countSame(cells, rows, cols, row, col, 0, 1, color) >=
+            3 ||
+            1 +
+                countSame(cells, rows, cols, row, col, -1, 0, color) +
+                countSame(cells, rows, cols, row, col, 1, 0, color) >=
+            3
+        );
+    }
+
+    /**
+     * Count up to two consecutive cells of a color starting next to a cell
+     * of a dealt array
+     */
+    private static int countSame(
+        byte[] cells,
+        int rows,
+        int cols,
+        int row,
+        int col,
+        int dr,
+        int dc,
+        int color
+    ) {
+        int count = 0;
+        int r = row + dr;
+        int c = col + dc;
+        while (
+            count < 2 &&
+            r >= 0 &&
+            r < rows &&
+            c >= 0 &&
+            c < cols &&
+            BoardState.colorOf(cells[r * cols + c]) == color
+        ) {
+            count++;
+            r += dr;
+            c += dc;
+        }
+        return count;
+    }
+
+    /**
+     * Try to create an "XX_X" shape in a dealt array by swapping candies of
+     * one color into it, keeping the array free of runs
+     *
+     * @return true if the array now has a legal swap
+     */
+    private boolean plantMove(
+        byte[] dealt,
+        int rows,
+        int cols,
+        Random random
+    ) {
+        for (int t = 0; t < PLANT_TRIES; t++) {
+            boolean horizontal = random.nextBoolean();
+            int dr = horizontal ? 0 : 1;
+            int dc = horizontal ? 1 : 0;
+            if (rows < 1 + 3 * dr || cols < 1 + 3 * dc) {
+                continue;
+            }
+
+            int anchor =
+                random.nextInt(rows - 3 * dr) * cols +
+                random.nextInt(cols - 3 * dc);
+            if (tryPlant(dealt, rows, cols, random, anchor, dr * cols + dc)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Plant one shape, undoing every swap on failure. Once the candies at
+     * offsets 0, 1 and 3 share a color that the gap at offset 2 does not
+     * have, moving the last one into the gap is legal.
+     *
+     * @param anchor Flat index of offset 0
+     * @param step Flat distance between consecutive offsets
+     */
+    private boolean tryPlant(
+        byte[] dealt,
+        int rows,
+        int cols,
+        Random random,
+        int anchor,
+        int step
+    ) {
+        int color = BoardState.colorOf(dealt[anchor]);
+        int gapColor = BoardState.colorOf(dealt[anchor + 2 * step]);
+        if (color < 0 || gapColor < 0 || color == gapColor) {
+            return false;
+        }
+
+        int[] swappedFrom = new int[PLANT_OFFSETS.length];
+
+        for (int k = 1; k < PLANT_OFFSETS.length; k++) {
+            int target = anchor + PLANT_OFFSETS[k] * step;
+            swappedFrom[k] = -1;
+            if (BoardState.colorOf(dealt[target]) == color) {
+                continue;
+            }
+
+            int source = findColor(dealt, random, color, anchor, step);
+            if (source < 0 || !swapIfQuiet(dealt, rows, cols, source, target)) {
+                for (int undo = k - 1; undo >= 1; undo--) {
+                    if (swappedFrom[undo] >= 0) {
+                        swap(
+                            dealt,
+                            swappedFrom[undo],
+                            anchor + PLANT_OFFSETS[undo] * step
+                        );
+                    }
+                }
+                return false;
+            }
+            swappedFrom[k] = source;
+        }
+
+        return true;
+    }
+
+    /**
+     * Sample cells for a candy of a color outside the planted shape
+     *
+     * @return Flat index, or -1 if none was found quickly
+     */
+    private static int findColor(
+        byte[] dealt,
+        Random random,
+        int color,
+        int anchor,
+        int step
+    ) {
+        for (int t = 0; t < FIND_TRIES; t++) {
+            int index = random.nextInt(dealt.length);
+            int offset = index - anchor;
+            boolean inShape =
+                offset >= 0 && offset <= 3 * step && offset % step == 0;
+            if (!inShape && BoardState.colorOf(dealt[index]) == color) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Swap two cells if neither ends up in a run, otherwise leave them
+     */
+    private static boolean swapIfQuiet(
+        byte[] dealt,
+        int rows,
+        int cols,
+        int first,
+        int second
+    ) {
+        swap(dealt, first, second);
+        if (
+            hasRunThrough(dealt, rows, cols, first) ||
+            hasRunThrough(dealt, rows, cols, second)
+        ) {
+            swap(dealt, first, second);
+            return false;
+        }
+        return true;
+    }
+
+    private static void swap(byte[] cells, int first, int second) {
+        byte tmp = cells[first];
+        cells[first] = cells[second];
+        cells[second] = tmp;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,68 @@
+package candycrush.model;
+
+/**
+ * Immutable picture of a board and its score at one point in a game.
+ *
+ * A snapshot shares its cell array with the {@link BoardState} it was taken
+ * from; the state copies the array before its next write, so taking a
+ * snapshot costs nothing until the board changes, and a board that is
+ * snapshotted again and again only pays one copy per change. States and
+ * engines branched from a snapshot share the array the same way, so any
+ * number of analyses can start from one snapshot without copying it up
+ * front or touching the live board.
+ */
+public final class BoardSnapshot {
+
+    private final int rows;
+    private final int cols;
+    private final byte[] cells;
+    private final long hash;
+    private final int score;
+
+    /**
+     * Wrap a cell array that no one will write to again
+     */
+    BoardSnapshot(int rows, int cols, byte[] cells, long hash, int score) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = cells;
+        this.hash = hash;
+        this.score = score;
+    }
+
+    /**
+     * Get the shared cell array; callers must not modify it
+     */
+    byte[] cells() {
+        return cells;
+    }
+
+    public byte get(int row, int col) {
+        return cells[row * cols + col];
+    }
+
+    public byte get(int index) {
+        return cells[index];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the {@link Zobrist} hash of the position, without the score
+     *
+     * @return Position hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,480 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Compact, allocation-free board state.
+ * Every cell is one byte in a flat row-major array: the low three bits hold
+ * the candy color index plus one (zero means empty) and the next two bits
+ * hold the {@link Candy.Type} ordinal. The per-color {@link BitBoard} and
+ * the {@link DirtyRegion} are kept in sync with every write, so all game
+ * logic can run on this class without touching {@link Candy} objects.
+ *
+ * The cell array is copy-on-write: {@link #snapshot(int)} hands it to a
+ * {@link BoardSnapshot} as is, and the next write copies it first. A
+ * {@link Zobrist} hash of the cells is updated with every write.
+ */
+public class BoardState {
+
+    public static final byte EMPTY = 0;
+
+    /** Largest supported number of rows or columns */
+    public static final int MAX_SIZE = 4096;
+
+    private static final int COLOR_BITS = 0x07;
+    private static final int TYPE_SHIFT = 3;
+    private static final int TYPE_BITS = 0x03;
+
+    private static final Candy.Type[] TYPES = Candy.Type.values();
+    private static final Candy.CandyColor[] COLORS = Candy.CandyColor.values();
+
+    private final int rows;
+    private final int cols;
+    private byte[] cells;
+    private boolean cellsShared;
+    private final BitBoard bitBoard;
+    private final long[] specialMask;
+    private final DirtyRegion dirtyRegion;
+    private long hash;
+
+    /**
+     * Create an empty board state
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public BoardState(int rows, int cols) {
+        if (rows < 1 || cols < 1 || rows > MAX_SIZE || cols > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                "Board size must be between 1 and " +
+                MAX_SIZE +
+                ", got " +
+                rows +
+                "x" +
+                cols
+            );
+        }
+
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = new byte[rows * cols];
+        this.bitBoard = new BitBoard(rows, cols, COLORS.length);
+        this.specialMask = bitBoard.newMask();
+        this.dirtyRegion = new DirtyRegion(rows, cols);
+    }
+
+    /**
+     * Create a copy of another board state with a clean dirty region
+     *
+     * @param other State to copy
+     */
+    public BoardState(BoardState other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.cells = other.cells.clone();
+        this.bitBoard = new BitBoard(other.bitBoard);
+        this.specialMask = other.specialMask.clone();
+        this.dirtyRegion = new DirtyRegion(rows, cols);
+        this.hash = other.hash;
+    }
+
+    /**
+     * Create a state that starts from a snapshot. The cells stay shared
+     * with the snapshot until the first write.
+     *
+     * @param snapshot Snapshot to branch from
+     */
+    public BoardState(BoardSnapshot snapshot) {
+        this(snapshot.getRows(), snapshot.getCols());
+        restore(snapshot);
+    }
+
+    /**
+     * Pack a candy type and color into a cell byte
+     *
+     * @param type Type ordinal
+     * @param color Color index
+     * @return Encoded cell
+     */
+    public static byte encode(int type, int color) {
+        return (byte) ((type << TYPE_SHIFT) | (color + 1));
+    }
+
+    /**
+     * Pack a candy type and color into a cell byte
+     *
+     * @param type Candy type
+     * @param color Candy color
+     * @return Encoded cell
+     */
+    public static byte encode(Candy.Type type, Candy.CandyColor color) {
+        return encode(type.ordinal(), color.ordinal());
+    }
+
+    /**
+     * Get the color index stored in a cell byte
+     *
+     * @param cell Encoded cell
+     * @return Color index, or -1 for an empty cell
+     */
+    public static int colorOf(byte cell) {
+        return (cell & COLOR_BITS) - 1;
+    }
+
+    /**
+     * Get the type ordinal stored in a cell byte
+     *
+     * @param cell Encoded cell
+     * @return Candy type ordinal
+     */
+    public static int typeOf(byte cell) {
+        return (cell >>> TYPE_SHIFT) & TYPE_BITS;
+    }
+
+    /**
+     * Decode the candy type of a cell byte
+     *
+     * @param cell Encoded cell
+     * @return Candy type
+     */
+    public static Candy.Type candyType(byte cell) {
+        return TYPES[typeOf(cell)];
+    }
+
+    /**
+     * Decode the candy color of a non-empty cell byte
+     *
+     * @param cell Encoded cell
+     * @return Candy color
+     */
+    public static Candy.CandyColor candyColor(byte cell) {
+        return COLORS[colorOf(cell)];
+    }
+
+    /**
+     * Get the flat index of a cell
+     *
+     * @param row Row position
+     * @param col Column position
+     * @return Row-major index
+     */
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    public byte get(int row, int col) {
+        return cells[row * cols + col];
+    }
+
+    public byte get(int index) {
+        return cells[index];
+    }
+
+    /**
+     * Write a cell, keeping the bitboard and dirty region in sync
+     *
+     * @param row Row position
+     * @param col Column position
+     * @param cell Encoded cell, or {@link #EMPTY}
+     */
+    public void set(int row, int col, byte cell) {
+        hash ^= setUntracked(row, col, cell);
+        dirtyRegion.markCell(row, col);
+    }
+
+    /**
+     * Write a cell and its bitboard bits without recording it in the dirty
+     * region or the hash. Concurrent callers must write disjoint, 64-column
+     * aligned stripes so they never share a bitboard word, must call
+     * {@link #ownCells()} before they start, and must mark the cells they
+     * wrote dirty and apply the combined hash changes themselves once they
+     * are all done.
+     *
+     * @param row Row position
+     * @param col Column position
+     * @param cell Encoded cell, or {@link #EMPTY}
+     * @return Change to XOR into the hash
+     */
+    long setUntracked(int row, int col, byte cell) {
+        if (cellsShared) {
+            ownCells();
+        }
+
+        int index = row * cols + col;
+        long delta = Zobrist.delta(index, cells[index], cell);
+        cells[index] = cell;
+        if (cell == EMPTY) {
+            bitBoard.clear(row, col);
+        } else {
+            bitBoard.set(row, col, colorOf(cell));
+        }
+
+        int word = row * bitBoard.getWordsPerRow() + (col >>> 6);
+        if (typeOf(cell) != 0) {
+            specialMask[word] |= 1L << col;
+        } else {
+            specialMask[word] &= ~(1L << col);
+        }
+        return delta;
+    }
+
+    /**
+     * Apply hash changes collected from {@link #setUntracked}
+     *
+     * @param delta Combined changes
+     */
+    void applyHashDelta(long delta) {
+        hash ^= delta;
+    }
+
+    /**
+     * Empty a cell
+     *
+     * @param row Row position
+     * @param col Column position
+     */
+    public void clear(int row, int col) {
+        set(row, col, EMPTY);
+    }
+
+    /**
+     * Swap the contents of two cells
+     *
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     */
+    public void swap(int row1, int col1, int row2, int col2) {
+        byte first = get(row1, col1);
+        set(row1, col1, get(row2, col2));
+        set(row2, col2, first);
+    }
+
+    /**
+     * Empty every cell and mark the whole board dirty
+     */
+    public void clearAll() {
+        if (cellsShared) {
+            cells = new byte[rows * cols];
+            cellsShared = false;
+        } else {
+            Arrays.fill(cells, EMPTY);
+        }
+        bitBoard.clearAll();
+        Arrays.fill(specialMask, 0L);
+        hash = 0L;
+        dirtyRegion.markAll();
+    }
+
+    /**
+     * Take an immutable snapshot of the cells. No copy is made until the
+     * next write to this state, so the snapshot must be taken on the
+     * thread that writes it.
+     *
+     * @param score Score to store with the snapshot
+     * @return Snapshot sharing this state's cells
+     */
+    public BoardSnapshot snapshot(int score) {
+        cellsShared = true;
+        return new BoardSnapshot(rows, cols, cells, hash, score);
+    }
+
+    /**
+     * Replace every cell with a snapshot's, sharing its array until the
+     * next write, and mark the whole board dirty
+     *
+     * @param snapshot Snapshot of a board of the same size
+     */
+    public void restore(BoardSnapshot snapshot) {
+        if (snapshot.getRows() != rows || snapshot.getCols() != cols) {
+            throw new IllegalArgumentException(
+                "Snapshot is " +
+                snapshot.getRows() +
+                "x" +
+                snapshot.getCols() +
+                ", board is " +
+                rows +
+                "x" +
+                cols
+            );
+        }
+
+        cells = snapshot.cells();
+        cellsShared = true;
+        hash = snapshot.getHash();
+        rebuildMasks();
+    }
+
+    /**
+     * Take ownership of a new cell array, rehashing the board and marking
+     * it all dirty. The caller must not touch the array afterwards.
+     *
+     * @param newCells Encoded cells in row-major order
+     */
+    void load(byte[] newCells) {
+        cells = newCells;
+        cellsShared = false;
+        hash = Zobrist.hash(newCells);
+        rebuildMasks();
+    }
+
+    /**
+     * Rebuild the bitboard and special mask from the cells one word at a
+     * time and mark the whole board dirty
+     */
+    private void rebuildMasks() {
+        int wordsPerRow = bitBoard.getWordsPerRow();
+        long[] colorBits = new long[COLORS.length];
+
+        for (int row = 0; row < rows; row++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                Arrays.fill(colorBits, 0L);
+                long specialBits = 0L;
+                int fromCol = w << 6;
+                int toCol = Math.min(cols, fromCol + 64);
+                int base = row * cols;
+
+                for (int col = fromCol; col < toCol; col++) {
+                    byte cell = cells[base + col];
+                    if (cell == EMPTY) {
+                        continue;
+                    }
+
+                    long bit = 1L << col;
+                    colorBits[colorOf(cell)] |= bit;
+                    if (typeOf(cell) != 0) {
+                        specialBits |= bit;
+                    }
+                }
+
+                int word = row * wordsPerRow + w;
+                for (int color = 0; color < colorBits.length; color++) {
+                    bitBoard.setWord(color, word, colorBits[color]);
+                }
+                specialMask[word] = specialBits;
+            }
+        }
+
+        dirtyRegion.markAll();
+    }
+
+    /**
+     * Make sure the cell array is not shared with a snapshot, copying it
+     * if it is
+     */
+    void ownCells() {
+        if (cellsShared) {
+            cells = cells.clone();
+            cellsShared = false;
+        }
+    }
+
+    public boolean isEmpty(int row, int col) {
+        return cells[row * cols + col] == EMPTY;
+    }
+
+    /**
+     * Check if position is valid
+     *
+     * @param row Row position
+     * @param col Column position
+     * @return true if position is on the board
+     */
+    public boolean isValidPosition(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * Find every matched cell on the board
+     *
+     * @param matches Mask to overwrite, sized by {@link #newMask()}
+     */
+    public void findMatches(long[] matches) {
+        bitBoard.findMatches(matches);
+    }
+
+    /**
+     * Find matches among the rows and columns changed since the last scan
+     * and reset the dirty region. Only valid while the board was free of
+     * matches before those changes, which holds between cascade steps.
+     *
+     * @param matches Mask to overwrite, sized by {@link #newMask()}
+     */
+    public void findDirtyMatches(long[] matches) {
+        bitBoard.findMatches(dirtyRegion, matches);
+        dirtyRegion.clear();
+    }
+
+    public boolean hasMatch() {
+        return bitBoard.hasMatch();
+    }
+
+    /**
+     * Check whether a cell is set in a mask
+     *
+     * @param mask Mask in bitboard layout
+     * @param row Row position
+     * @param col Column position
+     * @return true if the cell's bit is set
+     */
+    public boolean isSet(long[] mask, int row, int col) {
+        return bitBoard.isSet(mask, row, col);
+    }
+
+    /**
+     * Set a cell's bit in a mask
+     *
+     * @param mask Mask in bitboard layout
+     * @param row Row position
+     * @param col Column position
+     */
+    public void mark(long[] mask, int row, int col) {
+        bitBoard.mark(mask, row, col);
+    }
+
+    /**
+     * Allocate an empty cell mask in bitboard layout
+     *
+     * @return Zeroed mask
+     */
+    public long[] newMask() {
+        return bitBoard.newMask();
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the live mask of cells holding a striped or wrapped candy.
+     * Callers must not modify it.
+     *
+     * @return Special candy mask in bitboard layout
+     */
+    public long[] getSpecialMask() {
+        return specialMask;
+    }
+
+    /**
+     * Get the Zobrist hash of the cells, maintained incrementally; equal
+     * positions of the same size always have equal hashes
+     *
+     * @return Position hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    public BitBoard getBitBoard() {
+        return bitBoard;
+    }
+
+    public DirtyRegion getDirtyRegion() {
+        return dirtyRegion;
+    }
+}
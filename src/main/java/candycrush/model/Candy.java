@@ -7,6 +7,12 @@ import java.io.Serializable;
  * Represents a candy in the game.
  * Candies have various properties such as type, color, and score value.
  * They can also have special abilities based on their type.
+ *
+ * Game logic runs on the packed bytes of {@link BoardState}; inside a
+ * {@link GameBoard} each cell has one reusable Candy that acts as a view
+ * for the renderer. Its type and color are refreshed from the board state
+ * whenever it is read, while selection and explosion flags are UI-only.
+ * Fall animations come from the board's {@link DropMap}.
  */
 public class Candy implements Serializable {
 
@@ -80,7 +86,6 @@ public class Candy implements Serializable {
     private boolean isExploding;
     private int row;
     private int column;
-    private float animationOffset;
 
     /**
      * Create a simple candy with the specified color
@@ -102,7 +107,6 @@ public class Candy implements Serializable {
         this.color = color;
         this.isSelected = false;
         this.isExploding = false;
-        this.animationOffset = 0f;
     }
 
     /**
@@ -193,24 +197,6 @@ public class Candy implements Serializable {
         this.isExploding = exploding;
     }
 
-    /**
-     * Get animation offset (for smooth movements)
-     *
-     * @return Animation offset value
-     */
-    public float getAnimationOffset() {
-        return animationOffset;
-    }
-
-    /**
-     * Set animation offset
-     *
-     * @param offset Animation offset value
-     */
-    public void setAnimationOffset(float offset) {
-        this.animationOffset = offset;
-    }
-
     /**
      * Get score value for this candy
      *
@@ -245,6 +231,17 @@ public class Candy implements Serializable {
      * @return String representation (used for saving)
      */
     public String toFileString() {
+        return toFileString(type, color);
+    }
+
+    /**
+     * Convert a candy type and color to the save file representation
+     *
+     * @param type Candy type
+     * @param color Candy color
+     * @return String representation (used for saving)
+     */
+    public static String toFileString(Type type, CandyColor color) {
         String typeCode;
         if (type == Type.SIMPLE) {
             typeCode = "SC";
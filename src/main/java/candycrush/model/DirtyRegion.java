@@ -0,0 +1,195 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Tracks which rows and columns of the board changed since the last match
+ * scan. For every dirty row the span of touched columns is kept, and for
+ * every dirty column the span of touched rows, so a rescan can be limited
+ * to the lines a new run could pass through.
+ */
+public class DirtyRegion {
+
+    private final int rows;
+    private final int cols;
+
+    private final int[] rowMin;
+    private final int[] rowMax;
+    private final int[] colMin;
+    private final int[] colMax;
+
+    private final int[] dirtyRows;
+    private final int[] dirtyCols;
+    private int dirtyRowCount;
+    private int dirtyColCount;
+    private boolean all;
+
+    /**
+     * Create a clean region for a board of the given size
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public DirtyRegion(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowMin = new int[rows];
+        this.rowMax = new int[rows];
+        this.colMin = new int[cols];
+        this.colMax = new int[cols];
+        this.dirtyRows = new int[rows];
+        this.dirtyCols = new int[cols];
+
+        Arrays.fill(rowMin, -1);
+        Arrays.fill(colMin, -1);
+    }
+
+    /**
+     * Record a change to a single cell
+     *
+     * @param row Row position
+     * @param col Column position
+     */
+    public void markCell(int row, int col) {
+        if (all) {
+            return;
+        }
+
+        if (rowMin[row] < 0) {
+            dirtyRows[dirtyRowCount++] = row;
+            rowMin[row] = col;
+            rowMax[row] = col;
+        } else if (col < rowMin[row]) {
+            rowMin[row] = col;
+        } else if (col > rowMax[row]) {
+            rowMax[row] = col;
+        }
+
+        if (colMin[col] < 0) {
+            dirtyCols[dirtyColCount++] = col;
+            colMin[col] = row;
+            colMax[col] = row;
+        } else if (row < colMin[col]) {
+            colMin[col] = row;
+        } else if (row > colMax[col]) {
+            colMax[col] = row;
+        }
+    }
+
+    /**
+     * Record changes to a span of cells in one column
+     *
+     * @param col Column position
+     * @param fromRow First row changed
+     * @param toRow Last row changed, inclusive
+     */
+    public void markColumn(int col, int fromRow, int toRow) {
+        for (int row = fromRow; row <= toRow && !all; row++) {
+            markCell(row, col);
+        }
+    }
+
+    /**
+     * Mark the whole board as changed, forcing the next scan to be a full one
+     */
+    public void markAll() {
+        all = true;
+    }
+
+    /**
+     * Forget all recorded changes
+     */
+    public void clear() {
+        for (int i = 0; i < dirtyRowCount; i++) {
+            rowMin[dirtyRows[i]] = -1;
+        }
+        for (int i = 0; i < dirtyColCount; i++) {
+            colMin[dirtyCols[i]] = -1;
+        }
+        dirtyRowCount = 0;
+        dirtyColCount = 0;
+        all = false;
+    }
+
+    /**
+     * Check whether nothing changed since the last clear
+     *
+     * @return true if no cell is dirty
+     */
+    public boolean isEmpty() {
+        return !all && dirtyRowCount == 0;
+    }
+
+    /**
+     * Check whether the whole board must be rescanned
+     *
+     * @return true if {@link #markAll()} was called since the last clear
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    public int getDirtyRowCount() {
+        return dirtyRowCount;
+    }
+
+    /**
+     * Get the i-th dirty row, in the order rows were first touched
+     *
+     * @param index Index below {@link #getDirtyRowCount()}
+     * @return Row number
+     */
+    public int getDirtyRow(int index) {
+        return dirtyRows[index];
+    }
+
+    public int getDirtyColCount() {
+        return dirtyColCount;
+    }
+
+    /**
+     * Get the i-th dirty column, in the order columns were first touched
+     *
+     * @param index Index below {@link #getDirtyColCount()}
+     * @return Column number
+     */
+    public int getDirtyCol(int index) {
+        return dirtyCols[index];
+    }
+
+    /**
+     * Get the leftmost touched column of a dirty row
+     *
+     * @param row Row number
+     * @return Column number, or -1 if the row is clean
+     */
+    public int getRowMin(int row) {
+        return rowMin[row];
+    }
+
+    public int getRowMax(int row) {
+        return rowMax[row];
+    }
+
+    /**
+     * Get the topmost touched row of a dirty column
+     *
+     * @param col Column number
+     * @return Row number, or -1 if the column is clean
+     */
+    public int getColMin(int col) {
+        return colMin[col];
+    }
+
+    public int getColMax(int col) {
+        return colMax[col];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+}
@@ -0,0 +1,124 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Fall distances produced by one gravity and refill step.
+ *
+ * For every cell it holds how many rows the candy now in that cell fell to
+ * get there, with 0 for candies that did not move. A refilled candy falls
+ * from above the board by the number of holes in its column, so renderers
+ * can animate the whole step from this map alone.
+ */
+public class DropMap {
+
+    private final int rows;
+    private final int cols;
+    private final short[] falls;
+    private final short[] holes;
+
+    /**
+     * Create an empty drop map
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public DropMap(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.falls = new short[rows * cols];
+        this.holes = new short[cols];
+    }
+
+    /**
+     * Create a copy of another drop map
+     *
+     * @param other Drop map to copy
+     */
+    public DropMap(DropMap other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.falls = other.falls.clone();
+        this.holes = other.holes.clone();
+    }
+
+    /**
+     * Overwrite this map with another map of the same size
+     *
+     * @param other Drop map to copy
+     */
+    public void copyFrom(DropMap other) {
+        System.arraycopy(other.falls, 0, falls, 0, falls.length);
+        System.arraycopy(other.holes, 0, holes, 0, holes.length);
+    }
+
+    /**
+     * Forget all recorded falls
+     */
+    public void reset() {
+        Arrays.fill(falls, (short) 0);
+        Arrays.fill(holes, (short) 0);
+    }
+
+    void setFall(int index, int distance) {
+        falls[index] = (short) distance;
+    }
+
+    void setHoles(int col, int count) {
+        holes[col] = (short) count;
+    }
+
+    /**
+     * Get how far the candy in a cell fell
+     *
+     * @param index Flat cell index
+     * @return Distance in rows, 0 if the candy did not move
+     */
+    public int getFall(int index) {
+        return falls[index];
+    }
+
+    public int getFall(int row, int col) {
+        return falls[row * cols + col];
+    }
+
+    /**
+     * Get the number of empty cells a column had before the refill
+     *
+     * @param col Column position
+     * @return Number of holes
+     */
+    public int getHoles(int col) {
+        return holes[col];
+    }
+
+    /**
+     * Get the longest fall of the step
+     *
+     * @return Distance in rows, 0 if nothing moved
+     */
+    public int getMaxFall() {
+        int max = 0;
+        for (short hole : holes) {
+            max = Math.max(max, hole);
+        }
+        return max;
+    }
+
+    /**
+     * Check whether any candy fell
+     *
+     * @return true if at least one column had holes
+     */
+    public boolean isEmpty() {
+        return getMaxFall() == 0;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+}
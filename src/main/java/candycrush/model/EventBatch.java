@@ -0,0 +1,94 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Events of one {@link GameEventBus.Subscription#poll()} coalesced by
+ * kind: for each kind it keeps how often it occurred and its latest value,
+ * so a consumer can react once per frame however many events a cascade
+ * produced. Instances are reused by their subscription.
+ */
+public class EventBatch {
+
+    private static final int KINDS = GameEvent.values().length;
+
+    private final int[] counts;
+    private final int[] lastValues;
+    private long kindMask;
+    private int size;
+    private boolean overflowed;
+
+    EventBatch() {
+        this.counts = new int[KINDS];
+        this.lastValues = new int[KINDS];
+    }
+
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(counts, 0);
+        }
+        kindMask = 0;
+        size = 0;
+        overflowed = false;
+    }
+
+    void add(GameEvent event, int value) {
+        int kind = event.ordinal();
+        counts[kind]++;
+        lastValues[kind] = value;
+        kindMask |= 1L << kind;
+        size++;
+    }
+
+    void setOverflowed() {
+        overflowed = true;
+    }
+
+    /**
+     * Check whether an event of the given kind occurred
+     *
+     * @param event Event kind
+     * @return true if at least one such event is in the batch
+     */
+    public boolean contains(GameEvent event) {
+        return (kindMask & (1L << event.ordinal())) != 0;
+    }
+
+    /**
+     * Get how often an event kind occurred
+     *
+     * @param event Event kind
+     * @return Number of such events in the batch
+     */
+    public int count(GameEvent event) {
+        return counts[event.ordinal()];
+    }
+
+    /**
+     * Get the value of the latest event of a kind
+     *
+     * @param event Event kind
+     * @return Latest value, meaningful only if {@link #contains} is true
+     */
+    public int lastValue(GameEvent event) {
+        return lastValues[event.ordinal()];
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && !overflowed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether events were lost because the subscriber fell more than
+     * the bus capacity behind; consumers should then refresh fully
+     *
+     * @return true if events were skipped
+     */
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+}
@@ -1,44 +1,75 @@
 package candycrush.model;
 
-import candycrush.ai.GameAI;
-import candycrush.audio.AudioManager;
+import candycrush.util.GameLoop;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Represents the game board for Candy Crush.
- * Handles game logic, candy matching, and board state.
- * Implements Observable pattern to notify views of changes.
+ * Adapts the headless {@link GameEngine} to the Swing game screen: it paces
+ * cascade steps for animation, plays sounds, tracks moves and win/lose
+ * conditions, and publishes typed {@link GameEvent}s on its event bus.
+ *
+ * The cells live in a compact {@link BoardState}; {@link Candy} objects are
+ * only created, once per cell, when the renderer asks for them. Every move
+ * is recorded in a bounded {@link MoveHistory} of snapshots for undo and
+ * redo, and {@link #snapshot()} lets the AI and tools branch from the
+ * current position without touching the board being drawn.
+ *
+ * A board is confined to its {@link GameLoop}: moves, cascade steps, the AI
+ * and timers must all run as actions of that loop, which runs them one at
+ * a time. {@link GameSession} posts calls from other threads to the loop.
+ * After every step that changes the cells, and before announcing it, the
+ * loop publishes an immutable snapshot of the board. The renderer reads
+ * cells only from that snapshot, so it never sees a step half done; the
+ * candy views, pending matches and fall distances it also reads are
+ * guarded by locks and may lag the board by one step. A
+ * {@link PositionListener} hears on the loop when the position starts to
+ * change and when it settles again.
  */
-public class GameBoard extends Observable {
+public class GameBoard {
 
     private static final Logger LOGGER = Logger.getLogger(
         GameBoard.class.getName()
     );
 
+    private static final long DEFAULT_CASCADE_DELAY_MILLIS = 500;
+
     private final int rows;
     private final int cols;
 
-    private Candy[][] board;
-    private int score;
+    private final GameEngine engine;
+    private final BoardState state;
+    private final MoveResult stepResult;
+    private final GameEventBus events;
+    private final DropMap publishedDrops;
+    private final long[] publishedMatches;
+    private final MoveHistory history;
+    private final Object viewLock;
+    private volatile BoardSnapshot published;
+    private Candy[] views;
+    private GameLoop gameLoop;
+    private Runnable pendingStep;
+    private GameLoop.Task pendingTask;
+    private Replay replay;
+    private volatile boolean cascading;
+    private long cascadeDelayMillis;
     private int targetScore;
     private int movesLeft;
     private GameMode gameMode;
     private boolean gameOver;
     private boolean gameWon;
+    private boolean shuffleOnNoMoves;
 
-    private Candy selectedCandy;
-    private List<Candy> pendingMatches;
+    private int selectedIndex;
 
-    private GameAI ai;
+    private PositionListener positionListener;
 
     public enum GameMode {
         CLASSIC,
@@ -47,6 +78,24 @@ public class GameBoard extends Observable {
         MULTIPLAYER,
     }
 
+    /**
+     * Callback for changes of the position, called on the board's loop
+     */
+    public interface PositionListener {
+        /**
+         * A move, activation, shuffle, undo, redo or load was accepted and
+         * the position is about to change
+         */
+        void positionChanged();
+
+        /**
+         * The board has settled on a position with no pending matches
+         *
+         * @param snapshot Settled position
+         */
+        void positionSettled(BoardSnapshot snapshot);
+    }
+
     /**
      * Create a new game board with default settings
      */
@@ -61,68 +110,103 @@ public class GameBoard extends Observable {
      * @param cols Number of columns
      */
     public GameBoard(int rows, int cols) {
+        this(rows, cols, GameSeed.random());
+    }
+
+    /**
+     * Create a reproducible game board; boards built from the same seed and
+     * given the same moves play out identically
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     * @param seed Seed of the game
+     */
+    public GameBoard(int rows, int cols, GameSeed seed) {
         this.rows = rows;
         this.cols = cols;
-        this.board = new Candy[rows][cols];
-        this.pendingMatches = new ArrayList<>();
+        this.engine = new GameEngine(rows, cols, seed);
+        this.state = engine.getState();
+        this.stepResult = new MoveResult();
+        this.events = new GameEventBus();
+        this.publishedDrops = new DropMap(rows, cols);
+        this.publishedMatches = state.newMask();
+        this.history = new MoveHistory();
+        this.viewLock = new Object();
+        this.gameLoop = new GameLoop();
+        this.replay = new Replay(seed, rows, cols);
+        this.selectedIndex = -1;
+        this.cascadeDelayMillis = DEFAULT_CASCADE_DELAY_MILLIS;
         this.gameMode = GameMode.CLASSIC;
         this.targetScore = 1500;
         this.movesLeft = 30;
         this.gameOver = false;
         this.gameWon = false;
-
-        initializeBoard();
+        this.shuffleOnNoMoves = true;
+        publishView();
     }
 
     /**
-     * Initialize the board with random candies
+     * Get candy at specified position
+     *
+     * @param row Row position
+     * @param col Column position
+     * @return Candy at position or null if position is invalid or empty
      */
-    private void initializeBoard() {
-        Random random = new Random();
-
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                board[i][j] = createRandomCandy(i, j, random);
-            }
-        }
-
-        while (findAllMatches().size() > 0) {
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < cols; j++) {
-                    board[i][j] = createRandomCandy(i, j, random);
-                }
+    public Candy getCandyAt(int row, int col) {
+        BoardSnapshot board = published;
+        if (
+            isValidPosition(row, col) &&
+            board.get(row, col) != BoardState.EMPTY
+        ) {
+            synchronized (viewLock) {
+                return viewAt(board, row, col);
             }
         }
+        return null;
     }
 
     /**
-     * Create a random candy
+     * Get the reusable view of a non-empty cell, refreshed from a published
+     * snapshot. Callers hold the view lock.
      *
+     * @param board Snapshot to read the cell from
      * @param row Row position
      * @param col Column position
-     * @param random Random generator
-     * @return New candy instance
+     * @return Candy view for the cell
      */
-    private Candy createRandomCandy(int row, int col, Random random) {
-        Candy.CandyColor[] colors = Candy.CandyColor.values();
-        Candy.CandyColor randomColor = colors[random.nextInt(colors.length)];
-        Candy candy = new Candy(randomColor);
-        candy.setPosition(row, col);
-        return candy;
+    private Candy viewAt(BoardSnapshot board, int row, int col) {
+        if (views == null) {
+            views = new Candy[rows * cols];
+        }
+
+        int index = state.index(row, col);
+        byte cell = board.get(index);
+        Candy view = views[index];
+
+        if (view == null) {
+            view = new Candy(
+                BoardState.candyType(cell),
+                BoardState.candyColor(cell)
+            );
+            view.setPosition(row, col);
+            views[index] = view;
+        } else {
+            view.setType(BoardState.candyType(cell));
+            view.setCandyColor(BoardState.candyColor(cell));
+        }
+
+        return view;
     }
 
     /**
-     * Get candy at specified position
+     * Get the view of a cell only if the renderer already created it.
+     * Callers hold the view lock.
      *
-     * @param row Row position
-     * @param col Column position
-     * @return Candy at position or null if position is invalid
+     * @param index Flat cell index
+     * @return Candy view, or null if none exists yet
      */
-    public Candy getCandyAt(int row, int col) {
-        if (isValidPosition(row, col)) {
-            return board[row][col];
-        }
-        return null;
+    private Candy existingView(int index) {
+        return views == null ? null : views[index];
     }
 
     /**
@@ -144,51 +228,71 @@ public class GameBoard extends Observable {
      * @return true if selection was successful
      */
     public boolean selectCandy(int row, int col) {
-        if (!isValidPosition(row, col)) {
+        if (
+            cascading ||
+            !isValidPosition(row, col) ||
+            state.isEmpty(row, col)
+        ) {
             return false;
         }
 
-        Candy candy = board[row][col];
-
-        if (selectedCandy == null) {
-            selectedCandy = candy;
-            candy.setSelected(true);
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SELECT);
+        int index = state.index(row, col);
 
-            setChanged();
-            notifyObservers();
+        if (selectedIndex < 0) {
+            setSelectedIndex(index);
+            events.publish(GameEvent.SELECT, index);
             return true;
-        } else if (candy == selectedCandy) {
-            selectedCandy.setSelected(false);
-            selectedCandy = null;
-
-            setChanged();
-            notifyObservers();
+        } else if (index == selectedIndex) {
+            setSelectedIndex(-1);
+            events.publish(GameEvent.SELECT, -1);
             return true;
-        } else if (isAdjacent(selectedCandy, candy)) {
-            return swapCandies(selectedCandy, candy);
+        } else if (isAdjacent(selectedIndex, index)) {
+            return swapCells(
+                selectedIndex / cols,
+                selectedIndex % cols,
+                row,
+                col
+            );
         } else {
-            selectedCandy.setSelected(false);
-            selectedCandy = candy;
-            candy.setSelected(true);
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SELECT);
-
-            setChanged();
-            notifyObservers();
+            setSelectedIndex(index);
+            events.publish(GameEvent.SELECT, index);
             return true;
         }
     }
 
     /**
-     * Check if two candies are adjacent
+     * Move the selection to another cell, updating the cell views
      *
-     * @param candy1 First candy
-     * @param candy2 Second candy
-     * @return true if candies are adjacent
+     * @param index Flat index of the new selection, or -1 for none
      */
-    private boolean isAdjacent(Candy candy1, Candy candy2) {
-        int rowDiff = Math.abs(candy1.getRow() - candy2.getRow());
-        int colDiff = Math.abs(candy1.getColumn() - candy2.getColumn());
+    private void setSelectedIndex(int index) {
+        synchronized (viewLock) {
+            if (selectedIndex >= 0) {
+                Candy previous = existingView(selectedIndex);
+                if (previous != null) {
+                    previous.setSelected(false);
+                }
+            }
+
+            selectedIndex = index;
+
+            if (index >= 0) {
+                viewAt(published, index / cols, index % cols)
+                    .setSelected(true);
+            }
+        }
+    }
+
+    /**
+     * Check if two cells are adjacent
+     *
+     * @param index1 Flat index of first cell
+     * @param index2 Flat index of second cell
+     * @return true if cells are adjacent
+     */
+    private boolean isAdjacent(int index1, int index2) {
+        int rowDiff = Math.abs(index1 / cols - index2 / cols);
+        int colDiff = Math.abs(index1 % cols - index2 % cols);
 
         return (rowDiff == 1 && colDiff == 0) || (rowDiff == 0 && colDiff == 1);
     }
@@ -201,36 +305,41 @@ public class GameBoard extends Observable {
      * @return true if swap was successful
      */
     public boolean swapCandies(Candy candy1, Candy candy2) {
-        int row1 = candy1.getRow();
-        int col1 = candy1.getColumn();
-        int row2 = candy2.getRow();
-        int col2 = candy2.getColumn();
-
-        board[row1][col1] = candy2;
-        board[row2][col2] = candy1;
-        candy1.setPosition(row2, col2);
-        candy2.setPosition(row1, col1);
-
-        candy1.setSelected(false);
-        selectedCandy = null;
-
-        List<Candy> matches = findAllMatches();
+        return swapCells(
+            candy1.getRow(),
+            candy1.getColumn(),
+            candy2.getRow(),
+            candy2.getColumn()
+        );
+    }
 
-        if (matches.isEmpty()) {
-            board[row1][col1] = candy1;
-            board[row2][col2] = candy2;
-            candy1.setPosition(row1, col1);
-            candy2.setPosition(row2, col2);
+    /**
+     * Swap two cells and check for matches
+     *
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     * @return true if swap was successful
+     */
+    private boolean swapCells(int row1, int col1, int row2, int col2) {
+        setSelectedIndex(-1);
 
-            setChanged();
-            notifyObservers("invalid_move");
+        BoardSnapshot before = engine.snapshot();
+        if (!engine.swap(row1, col1, row2, col2)) {
+            events.publish(GameEvent.INVALID_MOVE, 0);
             return false;
         }
 
-        AudioManager.getInstance().playSound(AudioManager.SOUND_MATCH);
+        publishView();
+        history.record(before, movesLeft);
+        notifyChanged();
+
         decreaseMoves();
+        events.publish(GameEvent.SWAP, movesLeft);
+        recordMove(row1, col1, row2, col2);
 
-        processMatches(matches);
+        processMatches();
 
         return true;
     }
@@ -241,284 +350,334 @@ public class GameBoard extends Observable {
      * @return List of candies that are part of matches
      */
     public List<Candy> findAllMatches() {
-        List<Candy> matches = new ArrayList<>();
+        long[] mask = state.newMask();
+        state.findMatches(mask);
+        synchronized (viewLock) {
+            return collectCandies(mask);
+        }
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols - 2; j++) {
-                Candy c1 = board[i][j];
-                Candy c2 = board[i][j + 1];
-                Candy c3 = board[i][j + 2];
+    /**
+     * Convert a match mask into the candy views it covers in the published
+     * snapshot. Callers hold the view lock.
+     *
+     * @param mask Match mask in bitboard layout
+     * @return Candies in row-major order
+     */
+    private List<Candy> collectCandies(long[] mask) {
+        BoardSnapshot board = published;
+        List<Candy> matches = new ArrayList<>(BitBoard.count(mask));
 
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
                 if (
-                    c1 != null &&
-                    c2 != null &&
-                    c3 != null &&
-                    c1.isSameColor(c2) &&
-                    c1.isSameColor(c3)
+                    state.isSet(mask, i, j) &&
+                    board.get(i, j) != BoardState.EMPTY
                 ) {
-                    int matchLength = 3;
-
-                    while (j + matchLength < cols) {
-                        Candy nextCandy = board[i][j + matchLength];
-                        if (nextCandy != null && c1.isSameColor(nextCandy)) {
-                            matchLength++;
-                        } else {
-                            break;
-                        }
-                    }
-
-                    for (int k = 0; k < matchLength; k++) {
-                        if (!matches.contains(board[i][j + k])) {
-                            matches.add(board[i][j + k]);
-                        }
-                    }
-
-                    j += matchLength - 1;
+                    matches.add(viewAt(board, i, j));
                 }
             }
         }
 
-        for (int j = 0; j < cols; j++) {
-            for (int i = 0; i < rows - 2; i++) {
-                Candy c1 = board[i][j];
-                Candy c2 = board[i + 1][j];
-                Candy c3 = board[i + 2][j];
-
-                if (
-                    c1 != null &&
-                    c2 != null &&
-                    c3 != null &&
-                    c1.isSameColor(c2) &&
-                    c1.isSameColor(c3)
-                ) {
-                    int matchLength = 3;
-
-                    while (i + matchLength < rows) {
-                        Candy nextCandy = board[i + matchLength][j];
-                        if (nextCandy != null && c1.isSameColor(nextCandy)) {
-                            matchLength++;
-                        } else {
-                            break;
-                        }
-                    }
+        return matches;
+    }
 
-                    for (int k = 0; k < matchLength; k++) {
-                        if (!matches.contains(board[i + k][j])) {
-                            matches.add(board[i + k][j]);
-                        }
-                    }
+    /**
+     * Flag the existing views of the cells in a mask as exploding or not
+     *
+     * @param mask Cells to flag, in bitboard layout
+     * @param exploding New exploding flag
+     */
+    private void markExploding(long[] mask, boolean exploding) {
+        if (views == null) {
+            return;
+        }
 
-                    i += matchLength - 1;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                Candy view = existingView(state.index(i, j));
+                if (view != null && state.isSet(mask, i, j)) {
+                    view.setExploding(exploding);
                 }
             }
         }
+    }
 
-        return matches;
+    /**
+     * Show the engine's pending matches as exploding and schedule the next
+     * cascade step
+     */
+    private void processMatches() {
+        long[] pending = engine.getPendingMatches();
+
+        synchronized (viewLock) {
+            System.arraycopy(
+                pending,
+                0,
+                publishedMatches,
+                0,
+                publishedMatches.length
+            );
+            markExploding(pending, true);
+        }
+
+        cascading = true;
+        events.publish(GameEvent.MATCH, BitBoard.count(pending));
+
+        scheduleStep(
+            () -> {
+                removeMatches();
+                collapseBoard();
+                fillEmptySpaces();
+                checkGameState();
+            },
+            cascadeDelayMillis
+        );
     }
 
     /**
-     * Process matches by removing candies and creating special candies
+     * Schedule the next step of a cascade or shuffle on the loop
      *
-     * @param matches List of candies to process
+     * @param step Step to run
+     * @param delayMillis Delay in milliseconds
      */
-    private void processMatches(List<Candy> matches) {
-        Candy specialCandy = determineSpecialCandy(matches);
+    private void scheduleStep(Runnable step, long delayMillis) {
+        pendingStep = step;
+        pendingTask = gameLoop.schedule(() -> runStep(step), delayMillis);
+    }
 
-        for (Candy candy : matches) {
-            score += candy.getScore();
+    private void runStep(Runnable step) {
+        pendingStep = null;
+        pendingTask = null;
+        step.run();
+    }
 
-            candy.setExploding(true);
+    /**
+     * Finish a running cascade or shuffle at once: the scheduled step and
+     * every step it leads to run now, without the delays in between, so
+     * the board is stable afterwards. For shutting a board down, since a
+     * cancelled step would leave it cascading for good.
+     */
+    public void settle() {
+        while (pendingStep != null) {
+            Runnable step = pendingStep;
+            pendingTask.cancel();
+            runStep(step);
         }
-
-        pendingMatches.addAll(matches);
-        setChanged();
-        notifyObservers("match");
-
-        new java.util.Timer()
-            .schedule(
-                new java.util.TimerTask() {
-                    @Override
-                    public void run() {
-                        removeMatches(matches, specialCandy);
-                        collapseBoard();
-                        fillEmptySpaces();
-                        checkGameState();
-                    }
-                },
-                500
-            );
     }
 
     /**
-     * Determine what type of special candy to create based on match pattern
-     *
-     * @param matches List of matching candies
-     * @return Special candy to create, or null if no special candy
+     * Remove matching candies from the board
      */
-    private Candy determineSpecialCandy(List<Candy> matches) {
-        if (matches.size() < 4) {
-            return null;
+    private void removeMatches() {
+        synchronized (viewLock) {
+            markExploding(engine.getPendingMatches(), false);
         }
 
-        boolean isRowMatch = true;
-        boolean isColumnMatch = true;
+        stepResult.reset();
+        engine.clearMatches(stepResult);
+        publishView();
 
-        int firstRow = matches.get(0).getRow();
-        int firstCol = matches.get(0).getColumn();
-
-        for (int i = 1; i < matches.size(); i++) {
-            Candy candy = matches.get(i);
-            if (candy.getRow() != firstRow) {
-                isRowMatch = false;
-            }
-            if (candy.getColumn() != firstCol) {
-                isColumnMatch = false;
-            }
+        int specials =
+            stepResult.getSpecialCount() + stepResult.getTriggeredCount();
+        if (specials > 0) {
+            events.publish(GameEvent.SPECIAL, specials);
         }
 
-        Candy.CandyColor color = matches.get(0).getCandyColor();
-        Candy specialCandy = null;
+        events.publish(GameEvent.REMOVE, stepResult.getScoreDelta());
+    }
 
-        if (matches.size() >= 5) {
-            specialCandy = new Candy(Candy.Type.WRAPPED, color);
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SPECIAL);
-        } else if (matches.size() == 4) {
-            if (isRowMatch) {
-                specialCandy = new Candy(Candy.Type.ROW_STRIPED, color);
-            } else if (isColumnMatch) {
-                specialCandy = new Candy(Candy.Type.COLUMN_STRIPED, color);
-            } else {
-                specialCandy = new Candy(Candy.Type.ROW_STRIPED, color);
-            }
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SPECIAL);
+    /**
+     * Collapse the board after removing candies
+     */
+    private void collapseBoard() {
+        engine.collapse();
+        publishView();
+
+        events.publish(GameEvent.COLLAPSE, 0);
+    }
+
+    /**
+     * Fill empty spaces with new candies and publish the fall distances
+     */
+    private void fillEmptySpaces() {
+        engine.refill();
+        publishView();
+
+        synchronized (publishedDrops) {
+            publishedDrops.copyFrom(engine.getDropMap());
         }
+        events.publish(GameEvent.DROP, publishedDrops.getMaxFall());
 
-        return specialCandy;
+        if (engine.findCascadeMatches()) {
+            processMatches();
+        } else {
+            cascading = false;
+            events.publish(GameEvent.STABLE, engine.getScore());
+            notifySettled();
+        }
     }
 
     /**
-     * Remove matching candies from the board
+     * Check for special candy effects when activated
      *
-     * @param matches List of candies to remove
-     * @param specialCandy Special candy to create, if any
+     * @param candy Candy to activate
      */
-    private void removeMatches(List<Candy> matches, Candy specialCandy) {
-        pendingMatches.clear();
-
-        for (Candy candy : matches) {
-            int row = candy.getRow();
-            int col = candy.getColumn();
-            board[row][col] = null;
+    public void activateSpecialCandy(Candy candy) {
+        if (cascading) {
+            return;
         }
 
-        if (specialCandy != null && !matches.isEmpty()) {
-            Candy firstCandy = matches.get(0);
-            int row = firstCandy.getRow();
-            int col = firstCandy.getColumn();
+        BoardSnapshot before = engine.snapshot();
+        if (engine.activateSpecial(candy.getRow(), candy.getColumn())) {
+            history.record(before, movesLeft);
+            notifyChanged();
+            events.publish(GameEvent.SPECIAL, 1);
+            recordActivation(candy.getRow(), candy.getColumn());
+            processMatches();
+        }
+    }
 
-            specialCandy.setPosition(row, col);
-            board[row][col] = specialCandy;
+    /**
+     * Take back the last move, restoring the board, score and moves left
+     * from before it. Ignored while a cascade is running.
+     *
+     * @return true if a move was undone
+     */
+    public boolean undo() {
+        if (cascading || !history.canUndo()) {
+            return false;
         }
 
-        setChanged();
-        notifyObservers("remove");
+        return restore(history.undo(engine.snapshot(), movesLeft));
     }
 
     /**
-     * Collapse the board after removing candies
+     * Play an undone move again, restoring the board exactly as it was
+     * after that move. Ignored while a cascade is running.
+     *
+     * @return true if a move was redone
      */
-    private void collapseBoard() {
-        for (int col = 0; col < cols; col++) {
-            int emptyRow = -1;
+    public boolean redo() {
+        if (cascading || !history.canRedo()) {
+            return false;
+        }
 
-            for (int row = rows - 1; row >= 0; row--) {
-                if (board[row][col] == null) {
-                    if (emptyRow == -1) {
-                        emptyRow = row;
-                    }
-                } else if (emptyRow != -1) {
-                    board[emptyRow][col] = board[row][col];
-                    board[row][col] = null;
-                    board[emptyRow][col].setPosition(emptyRow, col);
+        return restore(history.redo(engine.snapshot(), movesLeft));
+    }
 
-                    emptyRow--;
-                    row++;
-                }
-            }
+    /**
+     * Return to a point in the history. The replay is dropped, since the
+     * refill stream has moved on and the seed can no longer rebuild the
+     * game.
+     *
+     * @param entry Entry to restore, or null for none
+     * @return true if an entry was restored
+     */
+    private boolean restore(MoveHistory.Entry entry) {
+        if (entry == null) {
+            return false;
         }
 
-        setChanged();
-        notifyObservers("collapse");
+        setSelectedIndex(-1);
+        notifyChanged();
+        engine.restore(entry.getSnapshot());
+        publishView();
+        movesLeft = entry.getMovesLeft();
+        replay = null;
+        gameOver = false;
+        gameWon = false;
+
+        events.publish(GameEvent.RESTORE, engine.getScore());
+        notifySettled();
+        return true;
     }
 
     /**
-     * Fill empty spaces with new candies
+     * Take an immutable snapshot of the current position. Analyses can
+     * branch from it with {@link BoardState#BoardState(BoardSnapshot)} or
+     * {@link GameEngine#GameEngine(BoardSnapshot, GameSeed)} while the game
+     * goes on. Must be called on the board's loop, since it marks the
+     * cells shared; the snapshot may then be read from any thread.
+     *
+     * @return Snapshot of the board and score
      */
-    private void fillEmptySpaces() {
-        Random random = new Random();
+    public BoardSnapshot snapshot() {
+        return engine.snapshot();
+    }
 
-        for (int col = 0; col < cols; col++) {
-            for (int row = 0; row < rows; row++) {
-                if (board[row][col] == null) {
-                    board[row][col] = createRandomCandy(row, col, random);
+    /**
+     * Shuffle the candies on the board on the game loop, so the event
+     * dispatch thread never waits for it. Input is ignored until the
+     * {@link GameEvent#SHUFFLE} event, or until the loop gives up and the
+     * board stays as it was.
+     *
+     * @return true if the shuffle was scheduled
+     */
+    public boolean shuffle() {
+        if (cascading || gameOver) {
+            return false;
+        }
 
-                    board[row][col].setAnimationOffset(-1.0f * (rows - row));
-                }
-            }
+        cascading = true;
+        setSelectedIndex(-1);
+        scheduleStep(
+            () -> {
+                shuffleBoard();
+                cascading = false;
+            },
+            0
+        );
+        return true;
+    }
+
+    /**
+     * Shuffle the board now, recording it in the history and the replay
+     *
+     * @return true if the board was shuffled
+     */
+    private boolean shuffleBoard() {
+        BoardSnapshot before = engine.snapshot();
+        if (!engine.shuffle()) {
+            return false;
         }
 
-        List<Candy> newMatches = findAllMatches();
-        if (!newMatches.isEmpty()) {
-            processMatches(newMatches);
-        } else {
-            setChanged();
-            notifyObservers("stable");
+        publishView();
+        notifyChanged();
+        history.record(before, movesLeft);
+        if (replay != null) {
+            replay.addShuffle();
         }
+
+        events.publish(GameEvent.SHUFFLE, 0);
+        notifySettled();
+        return true;
     }
 
     /**
-     * Check for special candy effects when activated
+     * Append a swap to the replay, if this game still has one
      *
-     * @param candy Candy to activate
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
      */
-    public void activateSpecialCandy(Candy candy) {
-        List<Candy> affected = new ArrayList<>();
-
-        if (candy.getType() == Candy.Type.ROW_STRIPED) {
-            int row = candy.getRow();
-            for (int col = 0; col < cols; col++) {
-                if (board[row][col] != null) {
-                    affected.add(board[row][col]);
-                }
-            }
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SPECIAL);
-        } else if (candy.getType() == Candy.Type.COLUMN_STRIPED) {
-            int col = candy.getColumn();
-            for (int row = 0; row < rows; row++) {
-                if (board[row][col] != null) {
-                    affected.add(board[row][col]);
-                }
-            }
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SPECIAL);
-        } else if (candy.getType() == Candy.Type.WRAPPED) {
-            int centerRow = candy.getRow();
-            int centerCol = candy.getColumn();
-
-            for (int i = -1; i <= 1; i++) {
-                for (int j = -1; j <= 1; j++) {
-                    int row = centerRow + i;
-                    int col = centerCol + j;
-
-                    if (isValidPosition(row, col) && board[row][col] != null) {
-                        affected.add(board[row][col]);
-                    }
-                }
-            }
-            AudioManager.getInstance().playSound(AudioManager.SOUND_SPECIAL);
+    private void recordMove(int row1, int col1, int row2, int col2) {
+        if (replay != null) {
+            replay.addSwap(row1, col1, row2, col2);
         }
+    }
 
-        if (!affected.isEmpty()) {
-            processMatches(affected);
+    /**
+     * Append the activation of a special candy to the replay, if this game
+     * still has one
+     *
+     * @param row Row of the special candy
+     * @param col Column of the special candy
+     */
+    private void recordActivation(int row, int col) {
+        if (replay != null) {
+            replay.addActivation(row, col);
         }
     }
 
@@ -535,30 +694,24 @@ public class GameBoard extends Observable {
      * Check game state for win/lose conditions
      */
     private void checkGameState() {
-        if (score >= targetScore) {
+        if (engine.getScore() >= targetScore) {
             gameWon = true;
             gameOver = true;
-            AudioManager.getInstance()
-                .playSound(AudioManager.SOUND_LEVEL_COMPLETE);
-            setChanged();
-            notifyObservers("win");
+            events.publish(GameEvent.WIN, engine.getScore());
         }
 
         if (gameMode == GameMode.CLASSIC || gameMode == GameMode.PUZZLE) {
             if (movesLeft <= 0 && !gameWon) {
                 gameOver = true;
-                AudioManager.getInstance()
-                    .playSound(AudioManager.SOUND_GAME_OVER);
-                setChanged();
-                notifyObservers("lose");
+                events.publish(GameEvent.LOSE, engine.getScore());
             }
         }
 
-        if (!hasValidMoves() && !gameOver) {
-            gameOver = true;
-            AudioManager.getInstance().playSound(AudioManager.SOUND_GAME_OVER);
-            setChanged();
-            notifyObservers("no_moves");
+        if (!gameOver && !cascading && !hasValidMoves()) {
+            if (!shuffleOnNoMoves || !shuffleBoard()) {
+                gameOver = true;
+                events.publish(GameEvent.NO_MOVES, engine.getScore());
+            }
         }
     }
 
@@ -568,54 +721,7 @@ public class GameBoard extends Observable {
      * @return true if valid moves exist
      */
     public boolean hasValidMoves() {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                if (j < cols - 1) {
-                    Candy temp = board[i][j];
-                    board[i][j] = board[i][j + 1];
-                    board[i][j + 1] = temp;
-
-                    boolean hasMatch = !findAllMatches().isEmpty();
-
-                    board[i][j + 1] = board[i][j];
-                    board[i][j] = temp;
-
-                    if (hasMatch) {
-                        return true;
-                    }
-                }
-
-                if (i < rows - 1) {
-                    Candy temp = board[i][j];
-                    board[i][j] = board[i + 1][j];
-                    board[i + 1][j] = temp;
-
-                    boolean hasMatch = !findAllMatches().isEmpty();
-
-                    board[i + 1][j] = board[i][j];
-                    board[i][j] = temp;
-
-                    if (hasMatch) {
-                        return true;
-                    }
-                }
-            }
-        }
-
-        return false;
-    }
-
-    /**
-     * Find hints for possible moves
-     *
-     * @return An array with four values [row1, col1, row2, col2] representing a possible move
-     */
-    public int[] getHint() {
-        if (ai == null) {
-            ai = new GameAI(this);
-        }
-
-        return ai.findBestMove();
+        return engine.hasValidMoves();
     }
 
     /**
@@ -628,18 +734,19 @@ public class GameBoard extends Observable {
         try (
             BufferedReader reader = new BufferedReader(new FileReader(filePath))
         ) {
-            this.board = new Candy[rows][cols];
+            notifyChanged();
+            state.clearAll();
 
             String scoreLine = reader.readLine();
             if (scoreLine != null) {
                 try {
-                    this.score = Integer.parseInt(scoreLine.trim());
+                    engine.setScore(Integer.parseInt(scoreLine.trim()));
                 } catch (NumberFormatException e) {
                     LOGGER.log(
                         Level.WARNING,
                         "Invalid score in file: " + scoreLine
                     );
-                    this.score = 0;
+                    engine.setScore(0);
                 }
             }
 
@@ -659,19 +766,31 @@ public class GameBoard extends Observable {
                 for (int j = 0; j < cols; j++) {
                     String candyString = candyStrings[j].trim();
                     Candy candy = Candy.fromFileString(candyString);
-                    candy.setPosition(i, j);
-                    board[i][j] = candy;
+                    state.set(
+                        i,
+                        j,
+                        BoardState.encode(
+                            candy.getType(),
+                            candy.getCandyColor()
+                        )
+                    );
                 }
             }
 
-            selectedCandy = null;
-            pendingMatches.clear();
+            setSelectedIndex(-1);
+            engine.clearPendingMatches();
+            state.getDirtyRegion().markAll();
+            history.clear();
+            replay = null;
+            cascading = false;
             gameOver = false;
             gameWon = false;
 
-            setChanged();
-            notifyObservers("load");
+            publishView();
+            events.publish(GameEvent.LOAD, engine.getScore());
+            notifySettled();
         } catch (IOException e) {
+            publishView();
             LOGGER.log(
                 Level.SEVERE,
                 "Error loading game from file: " + filePath,
@@ -689,12 +808,17 @@ public class GameBoard extends Observable {
      */
     public void saveToFile(String filePath) throws IOException {
         try (FileWriter writer = new FileWriter(filePath)) {
-            writer.write(String.valueOf(score) + "\n");
+            writer.write(String.valueOf(engine.getScore()) + "\n");
 
             for (int i = 0; i < rows; i++) {
                 for (int j = 0; j < cols; j++) {
-                    Candy candy = board[i][j];
-                    writer.write(candy.toFileString());
+                    byte cell = state.get(i, j);
+                    writer.write(
+                        Candy.toFileString(
+                            BoardState.candyType(cell),
+                            BoardState.candyColor(cell)
+                        )
+                    );
 
                     if (j < cols - 1) {
                         writer.write(",");
@@ -721,11 +845,11 @@ public class GameBoard extends Observable {
     }
 
     public int getScore() {
-        return score;
+        return engine.getScore();
     }
 
     public void setScore(int score) {
-        this.score = score;
+        engine.setScore(score);
     }
 
     public int getTargetScore() {
@@ -744,6 +868,60 @@ public class GameBoard extends Observable {
         this.movesLeft = movesLeft;
     }
 
+    public GameLoop getGameLoop() {
+        return gameLoop;
+    }
+
+    public long getCascadeDelayMillis() {
+        return cascadeDelayMillis;
+    }
+
+    /**
+     * Set how long matched candies are shown before they are cleared
+     *
+     * @param cascadeDelayMillis Delay of each cascade step in milliseconds
+     */
+    public void setCascadeDelayMillis(long cascadeDelayMillis) {
+        this.cascadeDelayMillis = cascadeDelayMillis;
+    }
+
+    /**
+     * Set the session loop that paces cascade steps
+     *
+     * @param gameLoop Game loop of the owning session
+     */
+    public void setGameLoop(GameLoop gameLoop) {
+        this.gameLoop = gameLoop;
+    }
+
+    /**
+     * Listen for changes of the position
+     *
+     * @param positionListener Listener called on the loop, or null for none
+     */
+    public void setPositionListener(PositionListener positionListener) {
+        this.positionListener = positionListener;
+    }
+
+    /**
+     * Publish the current cells for the renderer
+     */
+    private void publishView() {
+        published = engine.snapshot();
+    }
+
+    private void notifyChanged() {
+        if (positionListener != null) {
+            positionListener.positionChanged();
+        }
+    }
+
+    private void notifySettled() {
+        if (positionListener != null) {
+            positionListener.positionSettled(engine.snapshot());
+        }
+    }
+
     public GameMode getGameMode() {
         return gameMode;
     }
@@ -760,7 +938,101 @@ public class GameBoard extends Observable {
         return gameWon;
     }
 
+    public boolean isShuffleOnNoMoves() {
+        return shuffleOnNoMoves;
+    }
+
+    /**
+     * Choose whether a board that runs out of moves is shuffled instead of
+     * ending the game
+     *
+     * @param shuffleOnNoMoves true to shuffle, false to end the game
+     */
+    public void setShuffleOnNoMoves(boolean shuffleOnNoMoves) {
+        this.shuffleOnNoMoves = shuffleOnNoMoves;
+    }
+
+    /**
+     * Check whether a cascade is still being resolved; input is ignored
+     * until the board is stable again
+     *
+     * @return true while matches are being cleared and refilled
+     */
+    public boolean isCascading() {
+        return cascading;
+    }
+
+    /**
+     * Copy the fall distances published with the latest
+     * {@link GameEvent#DROP}
+     *
+     * @param target Map of this board's size to overwrite
+     */
+    public void copyDropMap(DropMap target) {
+        synchronized (publishedDrops) {
+            target.copyFrom(publishedDrops);
+        }
+    }
+
+    /**
+     * Get the stream of events this board publishes
+     *
+     * @return Event bus
+     */
+    public GameEventBus getEvents() {
+        return events;
+    }
+
+    public GameSeed getSeed() {
+        return engine.getSeed();
+    }
+
+    /**
+     * Get the Zobrist hash of the current position, for deduplicating
+     * positions and keying caches
+     *
+     * @return Position hash
+     */
+    public long getPositionHash() {
+        return engine.getHash();
+    }
+
+    /**
+     * Get the record of the moves played so far
+     *
+     * @return Replay of this game, or null once a board was loaded from a
+     *         file, since such a board cannot be rebuilt from the seed
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Get the candies of the matches published with the latest
+     * {@link GameEvent#MATCH}
+     *
+     * @return Candies in row-major order
+     */
     public List<Candy> getPendingMatches() {
-        return pendingMatches;
+        synchronized (viewLock) {
+            return collectCandies(publishedMatches);
+        }
+    }
+
+    /**
+     * Get the headless engine behind this board
+     *
+     * @return Game engine
+     */
+    public GameEngine getEngine() {
+        return engine;
     }
 }
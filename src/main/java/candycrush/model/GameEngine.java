@@ -0,0 +1,635 @@
+package candycrush.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Headless, synchronous Candy Crush rules engine.
+ * Owns a {@link BoardState} and resolves swaps, matches, special candies,
+ * gravity and refills without audio, timers or observers, so games can be
+ * simulated at full speed on any thread.
+ *
+ * {@link #playMove(int, int, int, int, MoveResult)} resolves a move and its
+ * whole cascade in one call. The individual steps ({@link #swap},
+ * {@link #clearMatches}, {@link #collapse}, {@link #refill} and
+ * {@link #findCascadeMatches}) are public so an interactive adapter can
+ * pace them for animation.
+ *
+ * Points come from a {@link ScoreTable}: candy points, run and combo
+ * bonuses, scaled by how deep into the cascade each step is.
+ *
+ * Boards of at least {@link ParallelBoardOps#MIN_PARALLEL_CELLS} cells run
+ * gravity, refills and full match scans on {@link ParallelBoardOps}.
+ *
+ * Instances are not thread-safe; confine each engine to one thread at a time.
+ */
+public class GameEngine {
+
+    private static final int COLOR_COUNT = Candy.CandyColor.values().length;
+    private static final byte NO_SPECIAL = BoardState.EMPTY;
+    private static final BoardGenerator GENERATOR = new BoardGenerator(
+        COLOR_COUNT,
+        BoardGenerator.DEFAULT_MIN_MOVES
+    );
+
+    private final int rows;
+    private final int cols;
+    private final BoardState state;
+    private GameSeed seed;
+    private Random refillRandom;
+    private Random shuffleRandom;
+    private final long[] matchMask;
+    private final DropMap dropMap;
+    private final SpecialResolver resolver;
+    private int pendingSpecialIndex;
+    private byte pendingSpecialCandy;
+    private int pendingTriggered;
+    private int pendingBonus;
+    private int cascadeLevel;
+    private ScoreTable scoreTable;
+    private BoardShuffler shuffler;
+    private ParallelBoardOps parallelOps;
+    private int score;
+
+    /**
+     * Create an engine with a freshly generated board
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public GameEngine(int rows, int cols) {
+        this(rows, cols, GameSeed.random());
+    }
+
+    /**
+     * Create an engine whose board and refills are determined by a seed
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     * @param seed Seed of the game
+     */
+    public GameEngine(int rows, int cols, GameSeed seed) {
+        this(new BoardState(rows, cols), seed);
+        initializeBoard();
+    }
+
+    /**
+     * Create an engine that continues from a snapshot, for analysing or
+     * replaying a position without touching the board it was taken from
+     *
+     * @param snapshot Position and score to start from
+     * @param seed Seed whose refill stream supplies new candies
+     */
+    public GameEngine(BoardSnapshot snapshot, GameSeed seed) {
+        this(new BoardState(snapshot), seed);
+        this.score = snapshot.getScore();
+    }
+
+    private GameEngine(BoardState state, GameSeed seed) {
+        this.rows = state.getRows();
+        this.cols = state.getCols();
+        this.state = state;
+        this.seed = seed;
+        this.refillRandom = seed.refillStream();
+        this.shuffleRandom = seed.shuffleStream();
+        this.matchMask = state.newMask();
+        this.dropMap = new DropMap(rows, cols);
+        this.resolver = new SpecialResolver(rows, cols);
+        this.pendingSpecialIndex = -1;
+        this.scoreTable = ScoreTable.DEFAULT;
+        this.parallelOps = ParallelBoardOps.isWorthwhile(state)
+            ? ParallelBoardOps.getInstance()
+            : null;
+    }
+
+    /**
+     * Initialize the board with random candies, free of matches and with
+     * a few legal swaps
+     */
+    private void initializeBoard() {
+        GENERATOR.generate(state, seed.boardStream());
+    }
+
+    /**
+     * Create a random candy
+     *
+     * @return Encoded simple candy of a random color
+     */
+    private byte createRandomCandy() {
+        return BoardState.encode(
+            Candy.Type.SIMPLE.ordinal(),
+            refillRandom.nextInt(COLOR_COUNT)
+        );
+    }
+
+    /**
+     * Resolve a move and its full cascade
+     *
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     * @return New result describing the move
+     */
+    public MoveResult playMove(int row1, int col1, int row2, int col2) {
+        MoveResult result = new MoveResult();
+        playMove(row1, col1, row2, col2, result);
+        return result;
+    }
+
+    /**
+     * Resolve a move and its full cascade into a reusable result
+     *
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     * @param result Result to reset and fill
+     * @return true if the move was legal and applied
+     */
+    public boolean playMove(
+        int row1,
+        int col1,
+        int row2,
+        int col2,
+        MoveResult result
+    ) {
+        result.reset();
+
+        if (!swap(row1, col1, row2, col2)) {
+            return false;
+        }
+
+        result.setValid(true);
+        resolveCascade(result);
+        return true;
+    }
+
+    /**
+     * Clear the pending matches and every cascade that follows them
+     *
+     * @param result Result to record the steps in
+     */
+    public void resolveCascade(MoveResult result) {
+        while (hasPendingMatches()) {
+            clearMatches(result);
+            collapse();
+            refill();
+            findCascadeMatches();
+        }
+    }
+
+    /**
+     * Swap two adjacent cells if that produces a match or pairs two special
+     * candies into a combo. On success the matched or blasted cells become
+     * the pending matches; otherwise the board is left unchanged.
+     *
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     * @return true if the swap was applied
+     */
+    public boolean swap(int row1, int col1, int row2, int col2) {
+        if (
+            !state.isValidPosition(row1, col1) ||
+            !state.isValidPosition(row2, col2) ||
+            Math.abs(row1 - row2) + Math.abs(col1 - col2) != 1 ||
+            state.isEmpty(row1, col1) ||
+            state.isEmpty(row2, col2)
+        ) {
+            return false;
+        }
+
+        if (SpecialResolver.isCombo(state, row1, col1, row2, col2)) {
+            cascadeLevel = 0;
+            pendingBonus = scoreTable.getComboPoints(
+                BoardState.typeOf(state.get(row1, col1)),
+                BoardState.typeOf(state.get(row2, col2))
+            );
+            state.swap(row1, col1, row2, col2);
+            Arrays.fill(matchMask, 0L);
+            pendingSpecialIndex = -1;
+            pendingSpecialCandy = NO_SPECIAL;
+            pendingTriggered = resolver.resolveCombo(
+                state,
+                row1,
+                col1,
+                row2,
+                col2,
+                matchMask
+            );
+            return true;
+        }
+
+        state.swap(row1, col1, row2, col2);
+        state.findDirtyMatches(matchMask);
+
+        if (BitBoard.isEmpty(matchMask)) {
+            state.swap(row1, col1, row2, col2);
+            state.getDirtyRegion().clear();
+            return false;
+        }
+
+        cascadeLevel = 0;
+        preparePending();
+        return true;
+    }
+
+    /**
+     * Decide the special candy and run bonus the fresh pending matches
+     * earn, then expand them with the blasts of the specials they contain
+     */
+    private void preparePending() {
+        pendingSpecialIndex = firstSetCell(matchMask);
+        pendingSpecialCandy = determineSpecialCandy(
+            matchMask,
+            pendingSpecialIndex
+        );
+        pendingBonus = scoreTable.runPoints(state, matchMask);
+        pendingTriggered = resolver.resolve(state, matchMask);
+    }
+
+    /**
+     * Check whether matched cells are waiting to be cleared
+     *
+     * @return true if the pending match mask is not empty
+     */
+    public boolean hasPendingMatches() {
+        return !BitBoard.isEmpty(matchMask);
+    }
+
+    /**
+     * Get the live mask of cells waiting to be cleared. Callers must not
+     * modify it.
+     *
+     * @return Pending match mask in bitboard layout
+     */
+    public long[] getPendingMatches() {
+        return matchMask;
+    }
+
+    /**
+     * Score and clear the pending matches, creating a special candy when
+     * the match pattern earns one
+     *
+     * @param result Result to record cleared cells and specials in
+     * @return Points earned by this step
+     */
+    public int clearMatches(MoveResult result) {
+        int specialIndex = pendingSpecialIndex;
+        byte specialCandy = pendingSpecialCandy;
+        int stepScore = scoreTable.scale(
+            scoreTable.cellPoints(state, matchMask) + pendingBonus,
+            cascadeLevel
+        );
+
+        int wordsPerRow = state.getBitBoard().getWordsPerRow();
+        for (int w = 0; w < matchMask.length; w++) {
+            long bits = matchMask[w];
+            while (bits != 0) {
+                int i = w / wordsPerRow;
+                int j = ((w % wordsPerRow) << 6) +
+                    Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                if (state.isEmpty(i, j)) {
+                    continue;
+                }
+
+                state.clear(i, j);
+                result.addCleared(state.index(i, j));
+            }
+        }
+
+        if (specialCandy != NO_SPECIAL) {
+            state.set(specialIndex / cols, specialIndex % cols, specialCandy);
+            result.addSpecial(specialIndex, specialCandy);
+        }
+
+        result.addTriggered(pendingTriggered);
+        clearPendingMatches();
+        cascadeLevel++;
+        score += stepScore;
+        result.addStep(stepScore);
+        return stepScore;
+    }
+
+    /**
+     * Find the first non-empty cell of a mask in row-major order
+     *
+     * @param mask Cell mask
+     * @return Flat index, or -1 if the mask covers no candy
+     */
+    private int firstSetCell(long[] mask) {
+        int wordsPerRow = state.getBitBoard().getWordsPerRow();
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                int i = w / wordsPerRow;
+                int j = ((w % wordsPerRow) << 6) +
+                    Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                if (!state.isEmpty(i, j)) {
+                    return state.index(i, j);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determine what type of special candy to create based on match pattern
+     *
+     * @param matches Mask of matching cells
+     * @param firstIndex Flat index of the first matching cell
+     * @return Encoded special candy to create, or NO_SPECIAL
+     */
+    private byte determineSpecialCandy(long[] matches, int firstIndex) {
+        int matchCount = BitBoard.count(matches);
+        if (matchCount < 4 || firstIndex < 0) {
+            return NO_SPECIAL;
+        }
+
+        boolean isRowMatch = true;
+        boolean isColumnMatch = true;
+
+        int firstRow = firstIndex / cols;
+        int firstCol = firstIndex % cols;
+
+        int wordsPerRow = state.getBitBoard().getWordsPerRow();
+        for (int w = 0; w < matches.length; w++) {
+            long bits = matches[w];
+            while (bits != 0) {
+                int i = w / wordsPerRow;
+                int j = ((w % wordsPerRow) << 6) +
+                    Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                if (i != firstRow) {
+                    isRowMatch = false;
+                }
+                if (j != firstCol) {
+                    isColumnMatch = false;
+                }
+            }
+        }
+
+        int color = BoardState.colorOf(state.get(firstIndex));
+
+        if (matchCount >= 5) {
+            return BoardState.encode(Candy.Type.WRAPPED.ordinal(), color);
+        } else if (isColumnMatch && !isRowMatch) {
+            return BoardState.encode(
+                Candy.Type.COLUMN_STRIPED.ordinal(),
+                color
+            );
+        }
+        return BoardState.encode(Candy.Type.ROW_STRIPED.ordinal(), color);
+    }
+
+    /**
+     * Let candies fall into the empty cells below them, recording the fall
+     * distances and the holes left in each column in the drop map
+     */
+    public void collapse() {
+        dropMap.reset();
+
+        if (parallelOps != null) {
+            parallelOps.collapse(state, dropMap);
+            return;
+        }
+
+        for (int col = 0; col < cols; col++) {
+            int target = rows - 1;
+
+            for (int row = rows - 1; row >= 0; row--) {
+                byte cell = state.get(row, col);
+                if (cell == BoardState.EMPTY) {
+                    continue;
+                }
+
+                if (target != row) {
+                    state.set(target, col, cell);
+                    state.clear(row, col);
+                    dropMap.setFall(state.index(target, col), target - row);
+                }
+                target--;
+            }
+
+            dropMap.setHoles(col, target + 1);
+        }
+    }
+
+    /**
+     * Fill the holes at the top of each column with new random candies,
+     * which fall in from above the board by the column's hole count
+     */
+    public void refill() {
+        if (parallelOps != null) {
+            parallelOps.refill(state, refillRandom, COLOR_COUNT, dropMap);
+            return;
+        }
+
+        for (int col = 0; col < cols; col++) {
+            int holes = dropMap.getHoles(col);
+
+            for (int row = 0; row < rows && state.isEmpty(row, col); row++) {
+                state.set(row, col, createRandomCandy());
+                dropMap.setFall(state.index(row, col), holes);
+            }
+        }
+    }
+
+    /**
+     * Look for new matches among the cells changed since the last scan and
+     * make them the pending matches
+     *
+     * @return true if a further cascade step is needed
+     */
+    public boolean findCascadeMatches() {
+        if (parallelOps != null && state.getDirtyRegion().isAll()) {
+            parallelOps.findMatches(state, matchMask);
+        } else {
+            state.findDirtyMatches(matchMask);
+        }
+
+        if (!hasPendingMatches()) {
+            return false;
+        }
+
+        preparePending();
+        return true;
+    }
+
+    /**
+     * Queue the blast of a special candy, and of every special it reaches,
+     * as the pending matches
+     *
+     * @param row Row of the special candy
+     * @param col Column of the special candy
+     * @return true if the blast covers at least one candy
+     */
+    public boolean activateSpecial(int row, int col) {
+        if (
+            !state.isValidPosition(row, col) ||
+            BoardState.typeOf(state.get(row, col)) == 0
+        ) {
+            return false;
+        }
+
+        clearPendingMatches();
+        cascadeLevel = 0;
+        state.mark(matchMask, row, col);
+        pendingTriggered = resolver.resolve(state, matchMask);
+
+        return hasPendingMatches();
+    }
+
+    /**
+     * Check if there are valid moves available
+     *
+     * @return true if valid moves exist
+     */
+    public boolean hasValidMoves() {
+        return MoveGenerator.hasValidMove(state);
+    }
+
+    /**
+     * Redistribute the candies on the board so it has no match and at
+     * least one legal swap, in time linear in the board size
+     *
+     * @return true if the board was shuffled; false if no arrangement was
+     *         found and the board was left unchanged
+     */
+    public boolean shuffle() {
+        if (shuffler == null) {
+            shuffler = new BoardShuffler(BoardShuffler.DEFAULT_MAX_ATTEMPTS);
+        }
+
+        clearPendingMatches();
+        return shuffler.shuffle(state, shuffleRandom);
+    }
+
+    /**
+     * Forget any pending matches
+     */
+    public void clearPendingMatches() {
+        Arrays.fill(matchMask, 0L);
+        pendingSpecialIndex = -1;
+        pendingSpecialCandy = NO_SPECIAL;
+        pendingTriggered = 0;
+        pendingBonus = 0;
+    }
+
+    /**
+     * Take an immutable snapshot of the board and score. Cheap: the cells
+     * are only copied by the next write to the board.
+     *
+     * @return Snapshot of the current position
+     */
+    public BoardSnapshot snapshot() {
+        return state.snapshot(score);
+    }
+
+    /**
+     * Return the board and score to a snapshot, dropping pending matches
+     *
+     * @param snapshot Snapshot of a board of the same size
+     */
+    public void restore(BoardSnapshot snapshot) {
+        state.restore(snapshot);
+        score = snapshot.getScore();
+        clearPendingMatches();
+        cascadeLevel = 0;
+        dropMap.reset();
+    }
+
+    /**
+     * Return the board and score to a snapshot and continue from there as
+     * a game of another seed, so a search can replay one position with
+     * many refill streams on a single engine
+     *
+     * @param snapshot Snapshot of a board of the same size
+     * @param seed Seed whose refill and shuffle streams are used from now
+     */
+    public void restore(BoardSnapshot snapshot, GameSeed seed) {
+        restore(snapshot);
+        this.seed = seed;
+        this.refillRandom = seed.refillStream();
+        this.shuffleRandom = seed.shuffleStream();
+    }
+
+    /**
+     * Get the Zobrist hash of the current position
+     *
+     * @return Position hash, maintained as cells change
+     */
+    public long getHash() {
+        return state.getHash();
+    }
+
+    public GameSeed getSeed() {
+        return seed;
+    }
+
+    /**
+     * Choose the kernels for gravity, refills and full scans. Games replay
+     * identically only with the same choice, since parallel refills draw
+     * colors in a different order.
+     *
+     * @param parallelOps Parallel kernels, or null for the sequential ones
+     */
+    public void setParallelOps(ParallelBoardOps parallelOps) {
+        this.parallelOps = parallelOps;
+    }
+
+    /**
+     * Get the fall distances of the last gravity and refill step. The map
+     * is overwritten by the next {@link #collapse()}.
+     *
+     * @return Live drop map
+     */
+    public DropMap getDropMap() {
+        return dropMap;
+    }
+
+    public ParallelBoardOps getParallelOps() {
+        return parallelOps;
+    }
+
+    public ScoreTable getScoreTable() {
+        return scoreTable;
+    }
+
+    /**
+     * Choose the scoring rules. Games replay to the same score only with
+     * the same table.
+     *
+     * @param scoreTable Scoring rules
+     */
+    public void setScoreTable(ScoreTable scoreTable) {
+        this.scoreTable = scoreTable;
+    }
+
+    public BoardState getState() {
+        return state;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+}
@@ -0,0 +1,39 @@
+package candycrush.model;
+
+/**
+ * Kinds of events a {@link GameBoard} publishes on its
+ * {@link GameEventBus}. Each event carries one int value whose meaning
+ * depends on the kind.
+ */
+public enum GameEvent {
+    /** Selection changed; value is the selected flat index, or -1 */
+    SELECT,
+    /** A swap was rejected; value is unused */
+    INVALID_MOVE,
+    /** A swap was applied; value is the number of moves left */
+    SWAP,
+    /** Matches are about to be cleared; value is the number of cells */
+    MATCH,
+    /** Matches were cleared; value is the points earned by the step */
+    REMOVE,
+    /** Special candies were created or fired; value is how many */
+    SPECIAL,
+    /** Candies fell into the cleared cells; value is unused */
+    COLLAPSE,
+    /** Holes were refilled; value is the longest fall in rows */
+    DROP,
+    /** The cascade settled; value is the score */
+    STABLE,
+    /** The target score was reached; value is the score */
+    WIN,
+    /** The moves ran out; value is the score */
+    LOSE,
+    /** No legal swap is left; value is the score */
+    NO_MOVES,
+    /** A saved game was loaded; value is the score */
+    LOAD,
+    /** A move was undone or redone; value is the score */
+    RESTORE,
+    /** The candies were redistributed; value is unused */
+    SHUFFLE,
+}
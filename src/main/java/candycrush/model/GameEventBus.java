@@ -0,0 +1,165 @@
+package candycrush.model;
+
+/**
+ * Ring buffer of {@link GameEvent}s with independent subscribers.
+ *
+ * Each event is packed into one long slot (kind in the high half, value in
+ * the low half), so publishing never allocates. Publishing is serialized by
+ * a lock, which lets input on the event dispatch thread and cascade steps
+ * on the game loop share one producer side. Subscribers read without
+ * locking, each from its own cursor, either event by event with
+ * {@link Subscription#drain(Listener)} or coalesced into a reusable
+ * {@link EventBatch} with {@link Subscription#poll()}, typically once per
+ * rendered frame. A subscriber that falls more than the capacity behind
+ * skips the lost events and sees {@link EventBatch#isOverflowed()}.
+ */
+public class GameEventBus {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final GameEvent[] EVENTS = GameEvent.values();
+
+    private final long[] slots;
+    private final int indexMask;
+    private volatile long published;
+
+    /**
+     * Callback for events read one at a time
+     */
+    public interface Listener {
+        /**
+         * Handle one event
+         *
+         * @param event Event kind
+         * @param value Event value, see {@link GameEvent}
+         */
+        void onEvent(GameEvent event, int value);
+    }
+
+    /**
+     * Create a bus with the default capacity
+     */
+    public GameEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a bus
+     *
+     * @param capacity Number of events kept for slow subscribers, rounded
+     *        up to a power of two
+     */
+    public GameEventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new long[size];
+        this.indexMask = size - 1;
+    }
+
+    /**
+     * Publish an event
+     *
+     * @param event Event kind
+     * @param value Event value, see {@link GameEvent}
+     */
+    public synchronized void publish(GameEvent event, int value) {
+        long sequence = published;
+        slots[(int) (sequence & indexMask)] =
+            ((long) event.ordinal() << 32) | (value & 0xFFFFFFFFL);
+        published = sequence + 1;
+    }
+
+    /**
+     * Subscribe to the events published from now on
+     *
+     * @return New subscription with its own cursor
+     */
+    public Subscription subscribe() {
+        return new Subscription();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * One consumer's position in the stream
+     */
+    public class Subscription {
+
+        private final EventBatch batch;
+        private long cursor;
+
+        private Subscription() {
+            this.batch = new EventBatch();
+            this.cursor = published;
+        }
+
+        /**
+         * Collect every event published since the last read into this
+         * subscription's batch
+         *
+         * @return Reused batch, valid until the next read
+         */
+        public EventBatch poll() {
+            batch.clear();
+            read(null);
+            return batch;
+        }
+
+        /**
+         * Hand every event published since the last read to a listener, in
+         * order
+         *
+         * @param listener Event callback
+         * @return Number of events delivered
+         */
+        public int drain(Listener listener) {
+            batch.clear();
+            return read(listener);
+        }
+
+        /**
+         * Check whether the last read skipped events that were overwritten
+         * before this subscriber got to them
+         *
+         * @return true if events were lost
+         */
+        public boolean isOverflowed() {
+            return batch.isOverflowed();
+        }
+
+        /**
+         * Read events up to the current end of the stream, skipping any
+         * that were overwritten before they could be read
+         */
+        private int read(Listener listener) {
+            long end = published;
+            long sequence = cursor;
+            int delivered = 0;
+
+            if (end - sequence > slots.length) {
+                sequence = end - slots.length;
+                batch.setOverflowed();
+            }
+
+            for (; sequence < end; sequence++) {
+                long slot = slots[(int) (sequence & indexMask)];
+                if (published - slots.length >= sequence) {
+                    batch.setOverflowed();
+                    continue;
+                }
+
+                GameEvent event = EVENTS[(int) (slot >>> 32)];
+                int value = (int) slot;
+                if (listener != null) {
+                    listener.onEvent(event, value);
+                } else {
+                    batch.add(event, value);
+                }
+                delivered++;
+            }
+
+            cursor = end;
+            return delivered;
+        }
+    }
+}
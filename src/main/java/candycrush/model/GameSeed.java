@@ -0,0 +1,118 @@
+package candycrush.model;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Seed of one game and the independent random streams derived from it.
+ *
+ * The seed is split into fixed streams for the initial board, the refills,
+ * the AI tie-breaks and board shuffles, so drawing more numbers from one
+ * stream never shifts the others. Two games built from the same seed and
+ * fed the same moves are therefore identical, which is what
+ * {@link Replay} relies on.
+ */
+public final class GameSeed {
+
+    private static final int BOARD_STREAM = 0;
+    private static final int REFILL_STREAM = 1;
+    private static final int AI_STREAM = 2;
+    private static final int SHUFFLE_STREAM = 3;
+
+    private final long seed;
+
+    /**
+     * Create a game seed
+     *
+     * @param seed Seed value
+     */
+    public GameSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Create a game seed from an unpredictable seed value
+     *
+     * @return New seed
+     */
+    public static GameSeed random() {
+        return new GameSeed(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Get a fresh stream for generating the starting board
+     *
+     * @return Random stream
+     */
+    public Random boardStream() {
+        return stream(BOARD_STREAM);
+    }
+
+    /**
+     * Get a fresh stream for the candies that refill the board
+     *
+     * @return Random stream
+     */
+    public Random refillStream() {
+        return stream(REFILL_STREAM);
+    }
+
+    /**
+     * Get a fresh stream for AI tie-breaks
+     *
+     * @return Random stream
+     */
+    public Random aiStream() {
+        return stream(AI_STREAM);
+    }
+
+    /**
+     * Get a fresh stream for shuffling a board that ran out of moves
+     *
+     * @return Random stream
+     */
+    public Random shuffleStream() {
+        return stream(SHUFFLE_STREAM);
+    }
+
+    /**
+     * Split the stream with the given index off the root generator
+     */
+    private Random stream(int index) {
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom split = root.split();
+        for (int i = 0; i < index; i++) {
+            split = root.split();
+        }
+        return new SplitStream(split);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "GameSeed{" + seed + '}';
+    }
+
+    /**
+     * Adapts a {@link SplittableRandom} to the {@link Random} API used by
+     * the engine and the AI
+     */
+    private static final class SplitStream extends Random {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SplittableRandom source;
+
+        SplitStream(SplittableRandom source) {
+            this.source = source;
+        }
+
+        @Override
+        protected int next(int bits) {
+            return source.nextInt() >>> (32 - bits);
+        }
+    }
+}
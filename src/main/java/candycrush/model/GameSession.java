@@ -0,0 +1,230 @@
+package candycrush.model;
+
+import candycrush.ai.GameAI;
+import candycrush.ai.HintService;
+import candycrush.util.GameLoop;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * One game hosted in the application: a {@link GameBoard}, the
+ * {@link GameLoop} it is confined to and the {@link GameAI} that plays or
+ * hints on it.
+ *
+ * Every call that touches the board is posted to the session's loop, so
+ * input from the event dispatch thread or a network thread, cascade steps,
+ * timers and auto-play are serialized for this board while other sessions
+ * run on other cores. Methods return at once; those with a result complete
+ * a future on the loop. The board, score and moves left should be set up
+ * before the first call is posted. Hints are searched off the loop by a
+ * {@link HintService}, and any input that changes the board cancels the
+ * hint pending for the old position. While the AI is not playing, the
+ * hint of every position the board settles on is precomputed in the
+ * background, so asking for it answers at once. A session that has been
+ * closed cannot be used again.
+ */
+public class GameSession {
+
+    private final GameLoop loop;
+    private final GameBoard board;
+    private final GameAI ai;
+    private final HintService hints;
+    private volatile GameLoop.Task autoPlay;
+    private volatile boolean closed;
+
+    /**
+     * Create a session with a random seed
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public GameSession(int rows, int cols) {
+        this(rows, cols, GameSeed.random());
+    }
+
+    /**
+     * Create a reproducible session
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     * @param seed Seed of the game
+     */
+    public GameSession(int rows, int cols, GameSeed seed) {
+        this.loop = new GameLoop();
+        this.board = new GameBoard(rows, cols, seed);
+        this.board.setGameLoop(loop);
+        this.ai = new GameAI(board);
+        this.hints = new HintService(ai);
+        this.board.setPositionListener(
+            new GameBoard.PositionListener() {
+                @Override
+                public void positionChanged() {
+                    hints.invalidate();
+                }
+
+                @Override
+                public void positionSettled(BoardSnapshot snapshot) {
+                    if (!closed && !isAutoPlaying()) {
+                        hints.precompute(snapshot);
+                    }
+                }
+            }
+        );
+    }
+
+    /**
+     * Run a function of the board on the session's loop
+     *
+     * @param action Function to run with the board
+     * @return Future completed with the function's result
+     */
+    public <T> CompletableFuture<T> call(Function<GameBoard, T> action) {
+        return loop.submit(() -> action.apply(board));
+    }
+
+    /**
+     * Select a candy, swapping it with the selected one if they are adjacent
+     *
+     * @param row Row position
+     * @param col Column position
+     * @return Future completed with true if the selection was accepted
+     */
+    public CompletableFuture<Boolean> select(int row, int col) {
+        hints.cancel();
+        return call(b -> b.selectCandy(row, col));
+    }
+
+    /**
+     * Take back the last move
+     *
+     * @return Future completed with true if a move was undone
+     */
+    public CompletableFuture<Boolean> undo() {
+        hints.cancel();
+        return call(GameBoard::undo);
+    }
+
+    /**
+     * Play an undone move again
+     *
+     * @return Future completed with true if a move was redone
+     */
+    public CompletableFuture<Boolean> redo() {
+        hints.cancel();
+        return call(GameBoard::redo);
+    }
+
+    /**
+     * Shuffle the candies on the board
+     *
+     * @return Future completed with true if the shuffle was scheduled
+     */
+    public CompletableFuture<Boolean> shuffle() {
+        hints.cancel();
+        return call(GameBoard::shuffle);
+    }
+
+    /**
+     * Ask the AI for a move on the current position. The position is read
+     * on the loop and searched off it within the hint budget, whichever
+     * strategy is set.
+     *
+     * @return Future completed with [row1, col1, row2, col2], or null if no
+     *         move is found; completed exceptionally if the board changes
+     *         or another hint is asked for first
+     */
+    public CompletableFuture<int[]> hint() {
+        return call(GameBoard::snapshot).thenCompose(hints::request);
+    }
+
+    /**
+     * Search the hint of the current position in the background, as is
+     * done whenever the board settles; call it once the game is set up
+     */
+    public void precomputeHint() {
+        loop.execute(() -> {
+            if (!board.isCascading() && !isAutoPlaying()) {
+                hints.precompute(board.snapshot());
+            }
+        });
+    }
+
+    /**
+     * Let the AI play, stopping any auto-play already running
+     *
+     * @param delayMillis Delay between moves in milliseconds
+     */
+    public void startAutoPlay(int delayMillis) {
+        hints.invalidate();
+        stopAutoPlay();
+        autoPlay = ai.startAutoPlay(loop, delayMillis);
+    }
+
+    /**
+     * Stop the AI; a move it is halfway through selecting is dropped
+     */
+    public void stopAutoPlay() {
+        GameLoop.Task task = autoPlay;
+        if (task != null) {
+            task.cancel();
+            autoPlay = null;
+        }
+    }
+
+    /**
+     * Check whether the AI is playing
+     *
+     * @return true until auto-play is stopped or runs out of moves
+     */
+    public boolean isAutoPlaying() {
+        GameLoop.Task task = autoPlay;
+        return task != null && !task.isDone();
+    }
+
+    /**
+     * Stop the session: auto-play and hint searches stop at once, then on
+     * the loop a running cascade is finished without delays, so the board
+     * is left stable, and every timer is cancelled. Calls already posted
+     * still run first. The session cannot be used again.
+     */
+    public void close() {
+        closed = true;
+        hints.invalidate();
+        stopAutoPlay();
+        loop.execute(() -> {
+            board.settle();
+            loop.cancelAll();
+        });
+    }
+
+    /**
+     * Get the board; only touch it from the session's loop, or read the
+     * views the renderer is allowed to read
+     *
+     * @return Game board
+     */
+    public GameBoard getBoard() {
+        return board;
+    }
+
+    public GameLoop getLoop() {
+        return loop;
+    }
+
+    public GameAI getAI() {
+        return ai;
+    }
+
+    public HintService getHints() {
+        return hints;
+    }
+
+    /**
+     * Get the stream of events the board publishes; safe from any thread
+     *
+     * @return Event bus
+     */
+    public GameEventBus getEvents() {
+        return board.getEvents();
+    }
+}
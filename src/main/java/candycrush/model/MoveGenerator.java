@@ -0,0 +1,234 @@
+package candycrush.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates legal swaps from a precomputed table of "one swap away from a
+ * run of three" patterns.
+ *
+ * When a candy of color C moves into a cell, a run appears exactly when two
+ * more cells of color C sit on one of the six cell pairs that form a triple
+ * with that cell (two to the left, one on each side, two to the right, and
+ * the same vertically), excluding pairs that contain the cell the candy
+ * came from. The table lists, for each of the four directions a candy can
+ * arrive from, the pairs still possible, so every adjacent swap is decided
+ * by a handful of local lookups and the whole board by a single pass.
+ *
+ * Swapping two special candies is always legal since it fires a combo.
+ *
+ * Results match swap-and-rescan only on a board without existing matches,
+ * which is the case whenever a cascade has settled.
+ */
+public final class MoveGenerator {
+
+    /** Candy arrives from the cell to the right */
+    private static final int FROM_RIGHT = 0;
+    /** Candy arrives from the cell to the left */
+    private static final int FROM_LEFT = 1;
+    /** Candy arrives from the cell below */
+    private static final int FROM_BELOW = 2;
+    /** Candy arrives from the cell above */
+    private static final int FROM_ABOVE = 3;
+
+    private static final int[][] SOURCE_OFFSETS = {
+        { 0, 1 },
+        { 0, -1 },
+        { 1, 0 },
+        { -1, 0 },
+    };
+
+    private static final int[][] TRIPLE_PAIRS = {
+        { 0, -2, 0, -1 },
+        { 0, -1, 0, 1 },
+        { 0, 1, 0, 2 },
+        { -2, 0, -1, 0 },
+        { -1, 0, 1, 0 },
+        { 1, 0, 2, 0 },
+    };
+
+    /**
+     * Pattern table indexed by arrival direction; each entry holds the
+     * (row, col, row, col) offsets of a pair that completes a run
+     */
+    private static final int[][][] PATTERNS = buildPatterns();
+
+    private MoveGenerator() {}
+
+    private static int[][][] buildPatterns() {
+        int[][][] patterns = new int[SOURCE_OFFSETS.length][][];
+
+        for (int dir = 0; dir < SOURCE_OFFSETS.length; dir++) {
+            int sourceRow = SOURCE_OFFSETS[dir][0];
+            int sourceCol = SOURCE_OFFSETS[dir][1];
+            List<int[]> allowed = new ArrayList<>();
+
+            for (int[] pair : TRIPLE_PAIRS) {
+                boolean usesSource =
+                    (pair[0] == sourceRow && pair[1] == sourceCol) ||
+                    (pair[2] == sourceRow && pair[3] == sourceCol);
+                if (!usesSource) {
+                    allowed.add(pair);
+                }
+            }
+
+            patterns[dir] = allowed.toArray(new int[0][]);
+        }
+
+        return patterns;
+    }
+
+    /**
+     * Check whether at least one legal swap exists
+     *
+     * @param state Board without pending matches
+     * @return true if some adjacent swap creates a run
+     */
+    public static boolean hasValidMove(BoardState state) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j + 1 < cols && isValidSwap(state, i, j, i, j + 1)) {
+                    return true;
+                }
+                if (i + 1 < rows && isValidSwap(state, i, j, i + 1, j)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Count the legal swaps on the board
+     *
+     * @param state Board without pending matches
+     * @return Number of adjacent swaps that create a run
+     */
+    public static int countValidMoves(BoardState state) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        int count = 0;
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j + 1 < cols && isValidSwap(state, i, j, i, j + 1)) {
+                    count++;
+                }
+                if (i + 1 < rows && isValidSwap(state, i, j, i + 1, j)) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * List every legal swap in row-major order of its first cell
+     *
+     * @param state Board without pending matches
+     * @return Moves as [row1, col1, row2, col2] arrays
+     */
+    public static List<int[]> findValidMoves(BoardState state) {
+        int rows = state.getRows();
+        int cols = state.getCols();
+        List<int[]> moves = new ArrayList<>();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (j + 1 < cols && isValidSwap(state, i, j, i, j + 1)) {
+                    moves.add(new int[] { i, j, i, j + 1 });
+                }
+                if (i + 1 < rows && isValidSwap(state, i, j, i + 1, j)) {
+                    moves.add(new int[] { i, j, i + 1, j });
+                }
+            }
+        }
+
+        return moves;
+    }
+
+    /**
+     * Check whether swapping two adjacent cells creates a run
+     *
+     * @param state Board without pending matches
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell, right of or below the first
+     * @param col2 Column of second cell, right of or below the first
+     * @return true if the swap is legal
+     */
+    public static boolean isValidSwap(
+        BoardState state,
+        int row1,
+        int col1,
+        int row2,
+        int col2
+    ) {
+        int color1 = BoardState.colorOf(state.get(row1, col1));
+        int color2 = BoardState.colorOf(state.get(row2, col2));
+
+        if (color1 < 0 || color2 < 0) {
+            return false;
+        }
+
+        if (SpecialResolver.isCombo(state, row1, col1, row2, col2)) {
+            return true;
+        }
+
+        if (color1 == color2) {
+            return false;
+        }
+
+        boolean horizontal = row1 == row2;
+        return (
+            completesRun(
+                state,
+                row1,
+                col1,
+                color2,
+                horizontal ? FROM_RIGHT : FROM_BELOW
+            ) ||
+            completesRun(
+                state,
+                row2,
+                col2,
+                color1,
+                horizontal ? FROM_LEFT : FROM_ABOVE
+            )
+        );
+    }
+
+    /**
+     * Check whether a candy of the given color arriving at a cell from the
+     * given direction would complete a run
+     */
+    private static boolean completesRun(
+        BoardState state,
+        int row,
+        int col,
+        int color,
+        int direction
+    ) {
+        for (int[] pair : PATTERNS[direction]) {
+            int r1 = row + pair[0];
+            int c1 = col + pair[1];
+            int r2 = row + pair[2];
+            int c2 = col + pair[3];
+
+            if (
+                state.isValidPosition(r1, c1) &&
+                state.isValidPosition(r2, c2) &&
+                BoardState.colorOf(state.get(r1, c1)) == color &&
+                BoardState.colorOf(state.get(r2, c2)) == color
+            ) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+package candycrush.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounded undo and redo stacks of {@link BoardSnapshot}s.
+ *
+ * Each entry is the board before a move together with the moves that were
+ * left, so undoing restores exactly what the player saw. Since snapshots
+ * share their cells until the board changes, an entry costs one copy of
+ * the cell array, made by the move it precedes. Once the undo stack is
+ * full the oldest entry is dropped. Recording a new move clears the redo
+ * stack.
+ */
+public class MoveHistory {
+
+    /** Default number of moves that can be undone */
+    public static final int DEFAULT_LIMIT = 32;
+
+    private final int limit;
+    private final Deque<Entry> undoStack;
+    private final Deque<Entry> redoStack;
+
+    /**
+     * One point in the history
+     */
+    public static final class Entry {
+
+        private final BoardSnapshot snapshot;
+        private final int movesLeft;
+
+        Entry(BoardSnapshot snapshot, int movesLeft) {
+            this.snapshot = snapshot;
+            this.movesLeft = movesLeft;
+        }
+
+        public BoardSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public int getMovesLeft() {
+            return movesLeft;
+        }
+    }
+
+    /**
+     * Create a history with the default limit
+     */
+    public MoveHistory() {
+        this(DEFAULT_LIMIT);
+    }
+
+    /**
+     * Create a history
+     *
+     * @param limit Number of moves that can be undone, at least 1
+     */
+    public MoveHistory(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException(
+                "History limit must be at least 1, got " + limit
+            );
+        }
+
+        this.limit = limit;
+        this.undoStack = new ArrayDeque<>(limit);
+        this.redoStack = new ArrayDeque<>(limit);
+    }
+
+    /**
+     * Record the board as it was before a move
+     *
+     * @param before Snapshot taken before the move
+     * @param movesLeft Moves left before the move
+     */
+    public void record(BoardSnapshot before, int movesLeft) {
+        push(undoStack, new Entry(before, movesLeft));
+        redoStack.clear();
+    }
+
+    /**
+     * Step back one move
+     *
+     * @param current Snapshot of the board now, kept for redo
+     * @param movesLeft Moves left now
+     * @return Entry to restore, or null if there is nothing to undo
+     */
+    public Entry undo(BoardSnapshot current, int movesLeft) {
+        Entry entry = undoStack.pollFirst();
+        if (entry != null) {
+            push(redoStack, new Entry(current, movesLeft));
+        }
+        return entry;
+    }
+
+    /**
+     * Step forward again over an undone move
+     *
+     * @param current Snapshot of the board now, kept for undo
+     * @param movesLeft Moves left now
+     * @return Entry to restore, or null if there is nothing to redo
+     */
+    public Entry redo(BoardSnapshot current, int movesLeft) {
+        Entry entry = redoStack.pollFirst();
+        if (entry != null) {
+            push(undoStack, new Entry(current, movesLeft));
+        }
+        return entry;
+    }
+
+    private void push(Deque<Entry> stack, Entry entry) {
+        if (stack.size() == limit) {
+            stack.pollLast();
+        }
+        stack.addFirst(entry);
+    }
+
+    /**
+     * Forget every recorded move
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+    }
+
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,176 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of resolving one move with {@link GameEngine}, including every
+ * cascade step it triggered. Instances can be reused across moves through
+ * {@link #reset()} so simulations do not allocate per move.
+ */
+public class MoveResult {
+
+    private boolean valid;
+    private int scoreDelta;
+    private int cascadeDepth;
+    private int triggeredCount;
+
+    private int[] clearedCells;
+    private int clearedCount;
+
+    private int[] specialCells;
+    private byte[] specialCandies;
+    private int specialCount;
+
+    /**
+     * Create an empty result
+     */
+    public MoveResult() {
+        this.clearedCells = new int[32];
+        this.specialCells = new int[4];
+        this.specialCandies = new byte[4];
+    }
+
+    /**
+     * Clear all recorded data so the instance can describe another move
+     */
+    public void reset() {
+        valid = false;
+        scoreDelta = 0;
+        cascadeDepth = 0;
+        triggeredCount = 0;
+        clearedCount = 0;
+        specialCount = 0;
+    }
+
+    void setValid(boolean valid) {
+        this.valid = valid;
+    }
+
+    /**
+     * Record the end of one clear step
+     *
+     * @param stepScore Points earned by the step
+     */
+    void addStep(int stepScore) {
+        scoreDelta += stepScore;
+        cascadeDepth++;
+    }
+
+    void addTriggered(int count) {
+        triggeredCount += count;
+    }
+
+    void addCleared(int index) {
+        if (clearedCount == clearedCells.length) {
+            clearedCells = Arrays.copyOf(clearedCells, clearedCount * 2);
+        }
+        clearedCells[clearedCount++] = index;
+    }
+
+    void addSpecial(int index, byte candy) {
+        if (specialCount == specialCells.length) {
+            specialCells = Arrays.copyOf(specialCells, specialCount * 2);
+            specialCandies = Arrays.copyOf(specialCandies, specialCount * 2);
+        }
+        specialCells[specialCount] = index;
+        specialCandies[specialCount] = candy;
+        specialCount++;
+    }
+
+    /**
+     * Check whether the swap produced a match and was applied
+     *
+     * @return true if the move was legal
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    public int getScoreDelta() {
+        return scoreDelta;
+    }
+
+    /**
+     * Get the number of clear steps, 1 for a move without follow-on cascades
+     *
+     * @return Cascade depth
+     */
+    public int getCascadeDepth() {
+        return cascadeDepth;
+    }
+
+    /**
+     * Get the number of striped and wrapped candies that fired over all
+     * steps, including chain reactions and combo partners
+     *
+     * @return Number of specials triggered
+     */
+    public int getTriggeredCount() {
+        return triggeredCount;
+    }
+
+    /**
+     * Get the number of cells cleared over all steps; a cell refilled and
+     * cleared again is counted each time
+     *
+     * @return Number of cleared cells
+     */
+    public int getClearedCount() {
+        return clearedCount;
+    }
+
+    /**
+     * Get the flat index of the i-th cleared cell, in clear order
+     *
+     * @param i Index below {@link #getClearedCount()}
+     * @return Flat cell index
+     */
+    public int getClearedCell(int i) {
+        return clearedCells[i];
+    }
+
+    public int getSpecialCount() {
+        return specialCount;
+    }
+
+    /**
+     * Get the flat index where the i-th special candy was created
+     *
+     * @param i Index below {@link #getSpecialCount()}
+     * @return Flat cell index
+     */
+    public int getSpecialCell(int i) {
+        return specialCells[i];
+    }
+
+    /**
+     * Get the i-th special candy created, encoded as a {@link BoardState}
+     * cell
+     *
+     * @param i Index below {@link #getSpecialCount()}
+     * @return Encoded cell
+     */
+    public byte getSpecialCandy(int i) {
+        return specialCandies[i];
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "MoveResult{" +
+            "valid=" +
+            valid +
+            ", scoreDelta=" +
+            scoreDelta +
+            ", cascadeDepth=" +
+            cascadeDepth +
+            ", cleared=" +
+            clearedCount +
+            ", specials=" +
+            specialCount +
+            ", triggered=" +
+            triggeredCount +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,399 @@
+package candycrush.model;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join versions of the board-wide kernels for large boards.
+ *
+ * Match scanning splits the board into bands of rows; each band writes only
+ * its own words of the match mask. Gravity and refill split it into stripes
+ * of 64 columns, which line up with bitboard words so stripes never write
+ * the same word, and walk each stripe row by row so every step reads one
+ * contiguous run of cells instead of striding down a column.
+ *
+ * Gravity records its fall distances and the holes of each column in a
+ * {@link DropMap}, and the refill adds the falls of the new candies.
+ *
+ * The kernels skip per-cell dirty tracking. Each stripe notes the lowest
+ * row it wrote in each of its columns, since every cell it changes lies
+ * above that row, and after the join those column spans are marked dirty,
+ * so the next cascade scan covers only the columns that moved. Each stripe
+ * also collects its own changes to the board hash, which are combined
+ * after the join.
+ */
+public class ParallelBoardOps {
+
+    /** Boards with fewer cells than this are not worth splitting */
+    public static final int MIN_PARALLEL_CELLS = 256 * 256;
+
+    private static final int STRIPE_COLS = 64;
+    private static final int MIN_BAND_CELLS = 16 * 1024;
+
+    private static ParallelBoardOps instance;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create kernels that run on the given pool
+     *
+     * @param pool Fork/join pool to run on
+     */
+    public ParallelBoardOps(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the kernels backed by the common fork/join pool
+     *
+     * @return Shared instance
+     */
+    public static synchronized ParallelBoardOps getInstance() {
+        if (instance == null) {
+            instance = new ParallelBoardOps(ForkJoinPool.commonPool());
+        }
+        return instance;
+    }
+
+    /**
+     * Check whether a board is large enough to benefit from these kernels
+     *
+     * @param state Board to check
+     * @return true if the board has at least {@link #MIN_PARALLEL_CELLS}
+     */
+    public static boolean isWorthwhile(BoardState state) {
+        return (long) state.getRows() * state.getCols() >= MIN_PARALLEL_CELLS;
+    }
+
+    /**
+     * Find every matched cell on the board
+     *
+     * @param state Board to scan
+     * @param matches Mask to overwrite, sized by {@link BoardState#newMask()}
+     */
+    public void findMatches(BoardState state, long[] matches) {
+        int bandRows = Math.max(1, MIN_BAND_CELLS / state.getCols());
+        pool.invoke(
+            new MatchTask(
+                state.getBitBoard(),
+                matches,
+                0,
+                state.getRows(),
+                bandRows
+            )
+        );
+        state.getDirtyRegion().clear();
+    }
+
+    /**
+     * Let candies fall into the empty cells below them
+     *
+     * @param state Board to collapse
+     * @param drops Cleared map to record fall distances and holes in
+     */
+    public void collapse(BoardState state, DropMap drops) {
+        int stripes = stripeCount(state);
+        long[] hashDeltas = new long[stripes];
+        int[] lowestRows = new int[state.getCols()];
+        state.ownCells();
+        pool.invoke(
+            new StripeTask(
+                state,
+                drops,
+                hashDeltas,
+                lowestRows,
+                0,
+                stripes,
+                null
+            )
+        );
+        finish(state, hashDeltas, lowestRows);
+    }
+
+    /**
+     * Fill the holes left at the top of each column by the last collapse
+     * with simple candies of random colors. Each stripe draws from its own
+     * stream seeded from the given generator, so the result depends only
+     * on that generator, not on thread timing.
+     *
+     * @param state Board to refill
+     * @param random Generator the stripe seeds are drawn from
+     * @param colorCount Number of candy colors
+     * @param drops Map holding the holes from the last collapse, which
+     *        receives the fall distances of the new candies
+     */
+    public void refill(
+        BoardState state,
+        Random random,
+        int colorCount,
+        DropMap drops
+    ) {
+        int stripes = stripeCount(state);
+        long[] seeds = new long[stripes];
+        for (int i = 0; i < stripes; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        RefillKernel kernel = new RefillKernel(seeds, colorCount);
+        long[] hashDeltas = new long[stripes];
+        int[] lowestRows = new int[state.getCols()];
+        state.ownCells();
+        pool.invoke(
+            new StripeTask(
+                state,
+                drops,
+                hashDeltas,
+                lowestRows,
+                0,
+                stripes,
+                kernel
+            )
+        );
+        finish(state, hashDeltas, lowestRows);
+    }
+
+    /**
+     * Apply the stripes' hash changes and mark the cells they wrote dirty
+     *
+     * @param lowestRows Lowest row written in each column, -1 for none
+     */
+    private static void finish(
+        BoardState state,
+        long[] hashDeltas,
+        int[] lowestRows
+    ) {
+        long delta = 0L;
+        for (long stripeDelta : hashDeltas) {
+            delta ^= stripeDelta;
+        }
+        state.applyHashDelta(delta);
+
+        DirtyRegion dirty = state.getDirtyRegion();
+        for (int col = 0; col < lowestRows.length; col++) {
+            if (lowestRows[col] >= 0) {
+                dirty.markColumn(col, 0, lowestRows[col]);
+            }
+        }
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    private static int stripeCount(BoardState state) {
+        return (state.getCols() + STRIPE_COLS - 1) / STRIPE_COLS;
+    }
+
+    /**
+     * Apply gravity to the columns of one stripe
+     *
+     * @param lowestRows Receives the lowest row written in each column of
+     *        the stripe, -1 for none
+     * @return Change to the board hash
+     */
+    private static long collapseStripe(
+        BoardState state,
+        DropMap drops,
+        int[] lowestRows,
+        int stripe
+    ) {
+        int rows = state.getRows();
+        int fromCol = stripe * STRIPE_COLS;
+        int toCol = Math.min(state.getCols(), fromCol + STRIPE_COLS);
+        int[] writeRow = new int[toCol - fromCol];
+        Arrays.fill(writeRow, rows - 1);
+        Arrays.fill(lowestRows, fromCol, toCol, -1);
+        long hashDelta = 0L;
+
+        for (int row = rows - 1; row >= 0; row--) {
+            for (int col = fromCol; col < toCol; col++) {
+                byte cell = state.get(row, col);
+                if (cell == BoardState.EMPTY) {
+                    continue;
+                }
+
+                int target = writeRow[col - fromCol]--;
+                if (target != row) {
+                    hashDelta ^= state.setUntracked(target, col, cell);
+                    hashDelta ^= state.setUntracked(
+                        row,
+                        col,
+                        BoardState.EMPTY
+                    );
+                    drops.setFall(state.index(target, col), target - row);
+                    if (lowestRows[col] < 0) {
+                        lowestRows[col] = target;
+                    }
+                }
+            }
+        }
+
+        for (int col = fromCol; col < toCol; col++) {
+            drops.setHoles(col, writeRow[col - fromCol] + 1);
+        }
+        return hashDelta;
+    }
+
+    /**
+     * Fills the empty cells of one stripe from that stripe's stream
+     */
+    private static class RefillKernel {
+
+        private final long[] seeds;
+        private final int colorCount;
+
+        RefillKernel(long[] seeds, int colorCount) {
+            this.seeds = seeds;
+            this.colorCount = colorCount;
+        }
+
+        long apply(
+            BoardState state,
+            DropMap drops,
+            int[] lowestRows,
+            int stripe
+        ) {
+            SplittableRandom random = new SplittableRandom(seeds[stripe]);
+            int fromCol = stripe * STRIPE_COLS;
+            int toCol = Math.min(state.getCols(), fromCol + STRIPE_COLS);
+            Arrays.fill(lowestRows, fromCol, toCol, -1);
+
+            long hashDelta = 0L;
+            int deepest = 0;
+            for (int col = fromCol; col < toCol; col++) {
+                deepest = Math.max(deepest, drops.getHoles(col));
+            }
+
+            for (int row = 0; row < deepest; row++) {
+                for (int col = fromCol; col < toCol; col++) {
+                    int holes = drops.getHoles(col);
+                    if (row < holes && state.isEmpty(row, col)) {
+                        hashDelta ^= state.setUntracked(
+                            row,
+                            col,
+                            BoardState.encode(
+                                Candy.Type.SIMPLE.ordinal(),
+                                random.nextInt(colorCount)
+                            )
+                        );
+                        drops.setFall(state.index(row, col), holes);
+                        lowestRows[col] = row;
+                    }
+                }
+            }
+            return hashDelta;
+        }
+    }
+
+    /**
+     * Scans a band of rows for matches, splitting it while it is large
+     */
+    private static class MatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BitBoard bits;
+        private final long[] matches;
+        private final int fromRow;
+        private final int toRow;
+        private final int bandRows;
+
+        MatchTask(
+            BitBoard bits,
+            long[] matches,
+            int fromRow,
+            int toRow,
+            int bandRows
+        ) {
+            this.bits = bits;
+            this.matches = matches;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.bandRows = bandRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= bandRows) {
+                bits.findMatches(matches, fromRow, toRow);
+                return;
+            }
+
+            int mid = (fromRow + toRow) >>> 1;
+            invokeAll(
+                new MatchTask(bits, matches, fromRow, mid, bandRows),
+                new MatchTask(bits, matches, mid, toRow, bandRows)
+            );
+        }
+    }
+
+    /**
+     * Runs gravity, or a refill when a kernel is given, over a range of
+     * column stripes, splitting the range down to single stripes
+     */
+    private static class StripeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BoardState state;
+        private final DropMap drops;
+        private final long[] hashDeltas;
+        private final int[] lowestRows;
+        private final int fromStripe;
+        private final int toStripe;
+        private final RefillKernel refill;
+
+        StripeTask(
+            BoardState state,
+            DropMap drops,
+            long[] hashDeltas,
+            int[] lowestRows,
+            int fromStripe,
+            int toStripe,
+            RefillKernel refill
+        ) {
+            this.state = state;
+            this.drops = drops;
+            this.hashDeltas = hashDeltas;
+            this.lowestRows = lowestRows;
+            this.fromStripe = fromStripe;
+            this.toStripe = toStripe;
+            this.refill = refill;
+        }
+
+        @Override
+        protected void compute() {
+            if (toStripe - fromStripe == 1) {
+                hashDeltas[fromStripe] = refill == null
+                    ? collapseStripe(state, drops, lowestRows, fromStripe)
+                    : refill.apply(state, drops, lowestRows, fromStripe);
+                return;
+            }
+
+            int mid = (fromStripe + toStripe) >>> 1;
+            invokeAll(
+                new StripeTask(
+                    state,
+                    drops,
+                    hashDeltas,
+                    lowestRows,
+                    fromStripe,
+                    mid,
+                    refill
+                ),
+                new StripeTask(
+                    state,
+                    drops,
+                    hashDeltas,
+                    lowestRows,
+                    mid,
+                    toStripe,
+                    refill
+                )
+            );
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package candycrush.model;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Record of a game as its seed, board size and the moves played, enough to
+ * rebuild the game exactly with {@link #play()}.
+ *
+ * Moves are stored as (row1, col1, row2, col2); a move whose two cells are
+ * the same activates the special candy in that cell instead of swapping,
+ * and a move of four -1s shuffles the board.
+ */
+public class Replay {
+
+    private static final Logger LOGGER = Logger.getLogger(
+        Replay.class.getName()
+    );
+
+    private static final int SHUFFLE = -1;
+
+    private final GameSeed seed;
+    private final int rows;
+    private final int cols;
+
+    private int[] moves;
+    private int moveCount;
+
+    /**
+     * Create an empty replay
+     *
+     * @param seed Seed of the game
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public Replay(GameSeed seed, int rows, int cols) {
+        this.seed = seed;
+        this.rows = rows;
+        this.cols = cols;
+        this.moves = new int[4 * 32];
+    }
+
+    /**
+     * Append a swap of two adjacent cells
+     *
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     */
+    public void addSwap(int row1, int col1, int row2, int col2) {
+        if (4 * moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+
+        int offset = 4 * moveCount;
+        moves[offset] = row1;
+        moves[offset + 1] = col1;
+        moves[offset + 2] = row2;
+        moves[offset + 3] = col2;
+        moveCount++;
+    }
+
+    /**
+     * Append the activation of a special candy
+     *
+     * @param row Row of the special candy
+     * @param col Column of the special candy
+     */
+    public void addActivation(int row, int col) {
+        addSwap(row, col, row, col);
+    }
+
+    /**
+     * Append a shuffle of the board
+     */
+    public void addShuffle() {
+        addSwap(SHUFFLE, SHUFFLE, SHUFFLE, SHUFFLE);
+    }
+
+    /**
+     * Rebuild the game by playing every recorded move, each with its full
+     * cascade, on a new engine
+     *
+     * @return Engine holding the final board and score
+     * @throws IllegalStateException If a recorded move is not legal on the
+     *         rebuilt board
+     */
+    public GameEngine play() {
+        GameEngine engine = new GameEngine(rows, cols, seed);
+        MoveResult result = new MoveResult();
+
+        for (int i = 0; i < moveCount; i++) {
+            int offset = 4 * i;
+            int row1 = moves[offset];
+            int col1 = moves[offset + 1];
+            int row2 = moves[offset + 2];
+            int col2 = moves[offset + 3];
+
+            boolean applied;
+            if (row1 == SHUFFLE) {
+                applied = engine.shuffle();
+            } else if (row1 == row2 && col1 == col2) {
+                result.reset();
+                applied = engine.activateSpecial(row1, col1);
+                engine.resolveCascade(result);
+            } else {
+                applied = engine.playMove(row1, col1, row2, col2, result);
+            }
+
+            if (!applied) {
+                throw new IllegalStateException(
+                    "Replay diverged at move " + i + " of " + moveCount
+                );
+            }
+        }
+
+        return engine;
+    }
+
+    /**
+     * Get a recorded move
+     *
+     * @param i Index below {@link #getMoveCount()}
+     * @return Move as [row1, col1, row2, col2]
+     */
+    public int[] getMove(int i) {
+        return Arrays.copyOfRange(moves, 4 * i, 4 * i + 4);
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public GameSeed getSeed() {
+        return seed;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Save the replay to a file
+     *
+     * @param filePath File path
+     * @throws IOException If file cannot be written
+     */
+    public void saveToFile(String filePath) throws IOException {
+        try (FileWriter writer = new FileWriter(filePath)) {
+            writer.write(seed.getSeed() + "\n");
+            writer.write(rows + "," + cols + "\n");
+
+            for (int i = 0; i < moveCount; i++) {
+                int offset = 4 * i;
+                writer.write(
+                    moves[offset] +
+                    "," +
+                    moves[offset + 1] +
+                    "," +
+                    moves[offset + 2] +
+                    "," +
+                    moves[offset + 3] +
+                    "\n"
+                );
+            }
+        } catch (IOException e) {
+            LOGGER.log(
+                Level.SEVERE,
+                "Error saving replay to file: " + filePath,
+                e
+            );
+            throw e;
+        }
+    }
+
+    /**
+     * Load a replay from a file
+     *
+     * @param filePath File path
+     * @return Loaded replay
+     * @throws IOException If file cannot be read or is malformed
+     */
+    public static Replay loadFromFile(String filePath) throws IOException {
+        try (
+            BufferedReader reader = new BufferedReader(new FileReader(filePath))
+        ) {
+            String seedLine = reader.readLine();
+            String sizeLine = reader.readLine();
+            if (seedLine == null || sizeLine == null) {
+                throw new IOException("File format error: missing header");
+            }
+
+            int[] size = parseInts(sizeLine, 2);
+            Replay replay = new Replay(
+                new GameSeed(Long.parseLong(seedLine.trim())),
+                size[0],
+                size[1]
+            );
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                int[] move = parseInts(line, 4);
+                replay.addSwap(move[0], move[1], move[2], move[3]);
+            }
+
+            return replay;
+        } catch (NumberFormatException e) {
+            throw new IOException("File format error: " + e.getMessage(), e);
+        } catch (IOException e) {
+            LOGGER.log(
+                Level.SEVERE,
+                "Error loading replay from file: " + filePath,
+                e
+            );
+            throw e;
+        }
+    }
+
+    /**
+     * Parse a comma-separated line of integers
+     */
+    private static int[] parseInts(String line, int count)
+        throws IOException {
+        String[] parts = line.split(",");
+        if (parts.length != count) {
+            throw new IOException("File format error: " + line);
+        }
+
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,312 @@
+package candycrush.model;
+
+/**
+ * Table-driven scoring rules.
+ *
+ * A clear step scores the points of every candy it clears, looked up by
+ * candy type, plus a bonus for each run that matched, looked up by the
+ * run's shape and length, or a bonus for the pair of specials that were
+ * combined. The sum is then scaled by the percentage for the step's
+ * cascade level, 0 being the step the move itself caused. Lengths and
+ * levels past the end of their tables use the last entry.
+ *
+ * Candy points are summed one mask word at a time: simple candies are
+ * counted with a population count and only the few special candies are
+ * looked up one by one, so scoring a step never visits candy objects.
+ *
+ * Tables are immutable and may be shared between engines and threads.
+ */
+public final class ScoreTable {
+
+    /** Shortest run that matches */
+    public static final int MIN_RUN = 3;
+
+    private static final int TYPE_COUNT = Candy.Type.values().length;
+
+    /**
+     * Shapes a run can be part of
+     */
+    public enum Shape {
+        /** A straight run that crosses no other run */
+        LINE,
+        /** A run that shares a candy with a perpendicular run: L, T or + */
+        CROSS,
+    }
+
+    /** Default rules: type points, longer runs and cascades pay more */
+    public static final ScoreTable DEFAULT = new ScoreTable(
+        new int[] {
+            Candy.Type.SIMPLE.getScore(),
+            Candy.Type.ROW_STRIPED.getScore(),
+            Candy.Type.COLUMN_STRIPED.getScore(),
+            Candy.Type.WRAPPED.getScore(),
+        },
+        new int[][] { { 0, 10, 30, 50 }, { 20, 30, 50 } },
+        new int[][] {
+            { 0, 0, 0, 0 },
+            { 0, 50, 50, 100 },
+            { 0, 50, 50, 100 },
+            { 0, 100, 100, 150 },
+        },
+        new int[] { 100, 150, 200, 250, 300 }
+    );
+
+    private final int[] cellPoints;
+    private final int[][] runPoints;
+    private final int[][] comboPoints;
+    private final int[] cascadePercent;
+
+    /**
+     * Create a scoring table; the arrays are copied
+     *
+     * @param cellPoints Points per cleared candy, by type ordinal
+     * @param runPoints Bonus per run, by shape ordinal, then by run length
+     *        minus {@link #MIN_RUN}
+     * @param comboPoints Bonus for combining two specials, by the type
+     *        ordinals of both
+     * @param cascadePercent Percentage a step's points are scaled by, by
+     *        cascade level
+     * @throws IllegalArgumentException If a table is missing entries
+     */
+    public ScoreTable(
+        int[] cellPoints,
+        int[][] runPoints,
+        int[][] comboPoints,
+        int[] cascadePercent
+    ) {
+        if (
+            cellPoints.length != TYPE_COUNT ||
+            runPoints.length != Shape.values().length ||
+            comboPoints.length != TYPE_COUNT ||
+            cascadePercent.length == 0
+        ) {
+            throw new IllegalArgumentException("Incomplete score table");
+        }
+
+        this.cellPoints = cellPoints.clone();
+        this.runPoints = new int[runPoints.length][];
+        for (int shape = 0; shape < runPoints.length; shape++) {
+            if (runPoints[shape].length == 0) {
+                throw new IllegalArgumentException(
+                    "No run points for shape " + Shape.values()[shape]
+                );
+            }
+            this.runPoints[shape] = runPoints[shape].clone();
+        }
+        this.comboPoints = new int[TYPE_COUNT][];
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            if (comboPoints[type].length != TYPE_COUNT) {
+                throw new IllegalArgumentException(
+                    "Incomplete combo points for type " + type
+                );
+            }
+            this.comboPoints[type] = comboPoints[type].clone();
+        }
+        this.cascadePercent = cascadePercent.clone();
+    }
+
+    /**
+     * Sum the points of the candies in a clear mask, in one pass over its
+     * words. Empty cells in the mask score nothing.
+     *
+     * @param state Board holding the candies, before they are cleared
+     * @param cleared Cells to clear, in bitboard layout
+     * @return Candy points
+     */
+    public int cellPoints(BoardState state, long[] cleared) {
+        BitBoard bits = state.getBitBoard();
+        long[] specials = state.getSpecialMask();
+        int simplePoints = cellPoints[0];
+        int wordsPerRow = bits.getWordsPerRow();
+        int points = 0;
+
+        for (int w = 0; w < cleared.length; w++) {
+            long word = cleared[w];
+            if (word == 0) {
+                continue;
+            }
+
+            word &= bits.occupiedWord(w);
+            long special = word & specials[w];
+            points += simplePoints * Long.bitCount(word & ~special);
+
+            while (special != 0) {
+                int row = w / wordsPerRow;
+                int col = ((w % wordsPerRow) << 6) +
+                    Long.numberOfTrailingZeros(special);
+                special &= special - 1;
+                points += cellPoints[BoardState.typeOf(state.get(row, col))];
+            }
+        }
+
+        return points;
+    }
+
+    /**
+     * Sum the bonuses of the runs in a match mask. Each maximal run of one
+     * color inside the mask counts once, as a cross if any of its candies
+     * is also part of a perpendicular run.
+     *
+     * @param state Board the runs are on
+     * @param matches Matched cells, before special blasts are added
+     * @return Run bonus
+     */
+    public int runPoints(BoardState state, long[] matches) {
+        BitBoard bits = state.getBitBoard();
+        int wordsPerRow = bits.getWordsPerRow();
+        int points = 0;
+
+        for (int w = 0; w < matches.length; w++) {
+            long word = matches[w];
+            while (word != 0) {
+                int row = w / wordsPerRow;
+                int col = ((w % wordsPerRow) << 6) +
+                    Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                int color = bits.colorAt(row, col);
+                if (color < 0) {
+                    continue;
+                }
+                if (!inRun(bits, matches, row, col - 1, color)) {
+                    points += runBonus(bits, matches, row, col, 0, 1, color);
+                }
+                if (!inRun(bits, matches, row - 1, col, color)) {
+                    points += runBonus(bits, matches, row, col, 1, 0, color);
+                }
+            }
+        }
+
+        return points;
+    }
+
+    /**
+     * Score the run starting at a cell in one direction, if there is one
+     *
+     * @return Bonus of the run, or 0 if it is shorter than a match
+     */
+    private int runBonus(
+        BitBoard bits,
+        long[] matches,
+        int row,
+        int col,
+        int dr,
+        int dc,
+        int color
+    ) {
+        int length = extent(bits, matches, row, col, dr, dc, color);
+        if (length < MIN_RUN) {
+            return 0;
+        }
+
+        Shape shape = Shape.LINE;
+        for (int k = 0; k < length && shape == Shape.LINE; k++) {
+            int r = row + k * dr;
+            int c = col + k * dc;
+            int across =
+                extent(bits, matches, r, c, dc, dr, color) +
+                extent(bits, matches, r, c, -dc, -dr, color) -
+                1;
+            if (across >= MIN_RUN) {
+                shape = Shape.CROSS;
+            }
+        }
+
+        return getRunPoints(shape, length);
+    }
+
+    /**
+     * Count the matched cells of a color from a cell onwards in one
+     * direction, the cell included
+     */
+    private static int extent(
+        BitBoard bits,
+        long[] matches,
+        int row,
+        int col,
+        int dr,
+        int dc,
+        int color
+    ) {
+        int length = 0;
+        while (
+            inRun(bits, matches, row + length * dr, col + length * dc, color)
+        ) {
+            length++;
+        }
+        return length;
+    }
+
+    private static boolean inRun(
+        BitBoard bits,
+        long[] matches,
+        int row,
+        int col,
+        int color
+    ) {
+        return (
+            row >= 0 &&
+            row < bits.getRows() &&
+            col >= 0 &&
+            col < bits.getCols() &&
+            bits.isSet(matches, row, col) &&
+            bits.colorAt(row, col) == color
+        );
+    }
+
+    /**
+     * Scale a step's points by its cascade level
+     *
+     * @param points Candy points plus bonuses of the step
+     * @param cascadeLevel 0 for the move's own step, 1 for the first
+     *        cascade, and so on
+     * @return Points the step earns
+     */
+    public int scale(int points, int cascadeLevel) {
+        return (points * getCascadePercent(cascadeLevel)) / 100;
+    }
+
+    /**
+     * Get the bonus of one run
+     *
+     * @param shape Shape of the run
+     * @param length Length of the run, at least {@link #MIN_RUN}
+     * @return Bonus points
+     */
+    public int getRunPoints(Shape shape, int length) {
+        int[] byLength = runPoints[shape.ordinal()];
+        return byLength[Math.min(length - MIN_RUN, byLength.length - 1)];
+    }
+
+    /**
+     * Get the bonus for combining two specials
+     *
+     * @param type1 Type ordinal of the first special
+     * @param type2 Type ordinal of the second special
+     * @return Bonus points
+     */
+    public int getComboPoints(int type1, int type2) {
+        return comboPoints[type1][type2];
+    }
+
+    /**
+     * Get the points of one cleared candy
+     *
+     * @param type Type ordinal of the candy
+     * @return Candy points
+     */
+    public int getCellPoints(int type) {
+        return cellPoints[type];
+    }
+
+    /**
+     * Get the percentage the points of a cascade level are scaled by
+     *
+     * @param cascadeLevel Cascade level, 0 for the move's own step
+     * @return Percentage
+     */
+    public int getCascadePercent(int cascadeLevel) {
+        int level = Math.min(cascadeLevel, cascadePercent.length - 1);
+        return cascadePercent[level];
+    }
+}
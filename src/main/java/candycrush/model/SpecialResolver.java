@@ -0,0 +1,300 @@
+package candycrush.model;
+
+import java.util.Arrays;
+
+/**
+ * Resolves chain reactions of striped and wrapped candies.
+ *
+ * Every special candy inside a clear mask is pushed on a worklist and
+ * flagged in a triggered mask, so it fires exactly once. Firing ORs its
+ * blast into the clear mask word by word from precomputed row, column and
+ * 3x3 patterns, and only the words the blast touches are checked for
+ * further specials against {@link BoardState#getSpecialMask()}. A chain
+ * that covers the whole board therefore takes time linear in the cells it
+ * covers, with no recursion and no rescans.
+ *
+ * Swapping two specials fires a combo instead of their own blasts: two
+ * striped candies clear a cross, striped with wrapped clears three rows
+ * and three columns, and two wrapped candies clear a 5x5 area.
+ *
+ * Instances hold scratch buffers and are not thread-safe.
+ */
+public class SpecialResolver {
+
+    private static final int ROW_STRIPED = Candy.Type.ROW_STRIPED.ordinal();
+    private static final int COLUMN_STRIPED =
+        Candy.Type.COLUMN_STRIPED.ordinal();
+    private static final int WRAPPED = Candy.Type.WRAPPED.ordinal();
+
+    private final int rows;
+    private final int cols;
+    private final int wordsPerRow;
+
+    /** Words of a full row, with the bits past the last column cleared */
+    private final long[] rowWords;
+    /**
+     * Word within a row holding the leftmost column of a 3x3 blast, indexed
+     * by center column plus one so centers just off either edge are covered
+     */
+    private final int[] nearWord;
+    /** Bits of a 3x3 blast's columns in {@link #nearWord} */
+    private final long[] nearBitsLow;
+    /** Bits of a 3x3 blast's columns in the word after {@link #nearWord} */
+    private final long[] nearBitsHigh;
+
+    private final long[] triggered;
+    private int[] worklist;
+    private int head;
+    private int tail;
+
+    /**
+     * Create a resolver for boards of the given size
+     *
+     * @param rows Number of rows
+     * @param cols Number of columns
+     */
+    public SpecialResolver(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.wordsPerRow = (cols + 63) >>> 6;
+
+        this.rowWords = new long[wordsPerRow];
+        for (int c = 0; c < cols; c++) {
+            rowWords[c >>> 6] |= 1L << c;
+        }
+
+        this.nearWord = new int[cols + 2];
+        this.nearBitsLow = new long[cols + 2];
+        this.nearBitsHigh = new long[cols + 2];
+        for (int c = -1; c <= cols; c++) {
+            int first = Math.max(0, c - 1);
+            int last = Math.min(cols - 1, c + 1);
+            nearWord[c + 1] = first >>> 6;
+            for (int cc = first; cc <= last; cc++) {
+                if (cc >>> 6 == nearWord[c + 1]) {
+                    nearBitsLow[c + 1] |= 1L << cc;
+                } else {
+                    nearBitsHigh[c + 1] |= 1L << cc;
+                }
+            }
+        }
+
+        this.triggered = new long[rows * wordsPerRow];
+        this.worklist = new int[64];
+    }
+
+    /**
+     * Fire every special candy inside a clear mask, and every special its
+     * blast reaches in turn, adding all blasted cells to the mask
+     *
+     * @param state Board the mask belongs to
+     * @param mask Clear mask to expand in place
+     * @return Number of specials triggered
+     */
+    public int resolve(BoardState state, long[] mask) {
+        reset();
+
+        long[] specials = state.getSpecialMask();
+        for (int w = 0; w < mask.length; w++) {
+            enqueue(mask[w] & specials[w], w);
+        }
+
+        return drain(state, mask);
+    }
+
+    /**
+     * Fire the combo of two special candies that were swapped, then every
+     * special the combo reaches. The two partners are consumed by the combo
+     * and do not fire their own blasts.
+     *
+     * @param state Board the mask belongs to
+     * @param row1 Row of the first partner
+     * @param col1 Column of the first partner
+     * @param row2 Row of the second partner, where the combo is centered
+     * @param col2 Column of the second partner, where the combo is centered
+     * @param mask Clear mask to add the combo area to
+     * @return Number of specials triggered, counting both partners
+     */
+    public int resolveCombo(
+        BoardState state,
+        int row1,
+        int col1,
+        int row2,
+        int col2,
+        long[] mask
+    ) {
+        reset();
+
+        int type1 = BoardState.typeOf(state.get(row1, col1));
+        int type2 = BoardState.typeOf(state.get(row2, col2));
+        markTriggered(row1, col1, mask);
+        markTriggered(row2, col2, mask);
+
+        long[] specials = state.getSpecialMask();
+        boolean wrapped1 = type1 == WRAPPED;
+        boolean wrapped2 = type2 == WRAPPED;
+
+        if (wrapped1 && wrapped2) {
+            blastNear(row2 - 1, col2 - 1, mask, specials);
+            blastNear(row2 - 1, col2 + 1, mask, specials);
+            blastNear(row2 + 1, col2 - 1, mask, specials);
+            blastNear(row2 + 1, col2 + 1, mask, specials);
+        } else if (wrapped1 || wrapped2) {
+            for (int r = row2 - 1; r <= row2 + 1; r++) {
+                blastRow(r, mask, specials);
+            }
+            for (int c = col2 - 1; c <= col2 + 1; c++) {
+                blastColumn(c, mask, specials);
+            }
+        } else {
+            blastRow(row2, mask, specials);
+            blastColumn(col2, mask, specials);
+        }
+
+        return 2 + drain(state, mask);
+    }
+
+    /**
+     * Check whether two cells hold specials that combo when swapped
+     *
+     * @param state Board to inspect
+     * @param row1 Row of first cell
+     * @param col1 Column of first cell
+     * @param row2 Row of second cell
+     * @param col2 Column of second cell
+     * @return true if both cells hold a striped or wrapped candy
+     */
+    public static boolean isCombo(
+        BoardState state,
+        int row1,
+        int col1,
+        int row2,
+        int col2
+    ) {
+        return (
+            BoardState.typeOf(state.get(row1, col1)) != 0 &&
+            BoardState.typeOf(state.get(row2, col2)) != 0
+        );
+    }
+
+    /**
+     * Fire queued specials until the worklist is empty
+     *
+     * @return Number of specials fired
+     */
+    private int drain(BoardState state, long[] mask) {
+        long[] specials = state.getSpecialMask();
+        int fired = 0;
+
+        while (head < tail) {
+            int index = worklist[head++];
+            int row = index / cols;
+            int col = index % cols;
+            int type = BoardState.typeOf(state.get(index));
+            fired++;
+
+            if (type == ROW_STRIPED) {
+                blastRow(row, mask, specials);
+            } else if (type == COLUMN_STRIPED) {
+                blastColumn(col, mask, specials);
+            } else if (type == WRAPPED) {
+                blastNear(row, col, mask, specials);
+            }
+        }
+
+        return fired;
+    }
+
+    private void blastRow(int row, long[] mask, long[] specials) {
+        if (row < 0 || row >= rows) {
+            return;
+        }
+
+        int base = row * wordsPerRow;
+        for (int w = 0; w < wordsPerRow; w++) {
+            add(base + w, rowWords[w], mask, specials);
+        }
+    }
+
+    private void blastColumn(int col, long[] mask, long[] specials) {
+        if (col < 0 || col >= cols) {
+            return;
+        }
+
+        int offset = col >>> 6;
+        long bit = 1L << col;
+        for (int r = 0; r < rows; r++) {
+            add(r * wordsPerRow + offset, bit, mask, specials);
+        }
+    }
+
+    /**
+     * Blast the 3x3 area centered on a cell, clipped to the board
+     */
+    private void blastNear(int row, int col, long[] mask, long[] specials) {
+        if (col < -1 || col > cols) {
+            return;
+        }
+
+        long low = nearBitsLow[col + 1];
+        long high = nearBitsHigh[col + 1];
+        int top = Math.max(0, row - 1);
+        int bottom = Math.min(rows - 1, row + 1);
+
+        for (int r = top; r <= bottom; r++) {
+            int base = r * wordsPerRow + nearWord[col + 1];
+            add(base, low, mask, specials);
+            if (high != 0) {
+                add(base + 1, high, mask, specials);
+            }
+        }
+    }
+
+    /**
+     * OR blast bits into one mask word and queue the specials it reached
+     * that have not fired yet
+     */
+    private void add(int word, long bits, long[] mask, long[] specials) {
+        mask[word] |= bits;
+        enqueue(bits & specials[word] & ~triggered[word], word);
+    }
+
+    /**
+     * Flag the specials in one mask word as triggered and queue them
+     */
+    private void enqueue(long bits, int word) {
+        if (bits == 0) {
+            return;
+        }
+
+        triggered[word] |= bits;
+        int row = word / wordsPerRow;
+        int colBase = (word % wordsPerRow) << 6;
+
+        while (bits != 0) {
+            int col = colBase + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+
+            if (tail == worklist.length) {
+                worklist = Arrays.copyOf(worklist, tail * 2);
+            }
+            worklist[tail++] = row * cols + col;
+        }
+    }
+
+    /**
+     * Flag a cell as triggered without queueing it and add it to the mask
+     */
+    private void markTriggered(int row, int col, long[] mask) {
+        int word = row * wordsPerRow + (col >>> 6);
+        long bit = 1L << col;
+        triggered[word] |= bit;
+        mask[word] |= bit;
+    }
+
+    private void reset() {
+        Arrays.fill(triggered, 0L);
+        head = 0;
+        tail = 0;
+    }
+}
@@ -0,0 +1,65 @@
+package candycrush.model;
+
+/**
+ * Zobrist keys for board positions.
+ *
+ * A position's hash is the XOR of one 64-bit key per non-empty cell, drawn
+ * for the pair (cell index, encoded candy), so changing a cell updates the
+ * hash with two XORs. Boards of up to 4096x4096 cells would need gigabytes
+ * for a classic key table, so each key is computed on demand by the
+ * SplitMix64 finalizer instead; the keys are fixed, which keeps hashes
+ * stable across runs and machines.
+ */
+public final class Zobrist {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final int CELL_BITS = 5;
+
+    private Zobrist() {}
+
+    /**
+     * Get the key of a candy in a cell
+     *
+     * @param index Flat cell index
+     * @param cell Encoded cell
+     * @return Key, 0 for an empty cell
+     */
+    public static long key(int index, byte cell) {
+        if (cell == BoardState.EMPTY) {
+            return 0L;
+        }
+
+        long z =
+            (((long) index << CELL_BITS) | (cell & ((1 << CELL_BITS) - 1))) *
+            GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get the change in hash when a cell is overwritten
+     *
+     * @param index Flat cell index
+     * @param before Encoded cell before the write
+     * @param after Encoded cell after the write
+     * @return Value to XOR into the hash
+     */
+    public static long delta(int index, byte before, byte after) {
+        return before == after ? 0L : key(index, before) ^ key(index, after);
+    }
+
+    /**
+     * Hash a whole board from scratch
+     *
+     * @param cells Encoded cells in row-major order
+     * @return Position hash
+     */
+    public static long hash(byte[] cells) {
+        long hash = 0L;
+        for (int i = 0; i < cells.length; i++) {
+            hash ^= key(i, cells[i]);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,156 @@
+package candycrush.tools;
+
+import candycrush.model.BoardState;
+import candycrush.model.Candy;
+import candycrush.model.DropMap;
+import candycrush.model.ParallelBoardOps;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless benchmark for the large-board kernels.
+ * Runs match scanning and gravity plus refill on one board with pools of
+ * 1, 2, 4, ... threads up to the number of cores and prints the throughput
+ * and speedup of each.
+ *
+ * Usage: java -cp bin candycrush.tools.BoardBenchmark [size] [repetitions]
+ */
+public class BoardBenchmark {
+
+    private static final int DEFAULT_SIZE = 2048;
+    private static final int DEFAULT_REPETITIONS = 5;
+    private static final int HOLE_PERCENT = 15;
+
+    /**
+     * Benchmark entry point
+     *
+     * @param args Optional board size and repetition count
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        int repetitions = args.length > 1
+            ? Integer.parseInt(args[1])
+            : DEFAULT_REPETITIONS;
+        int colorCount = Candy.CandyColor.values().length;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        BoardState state = new BoardState(size, size);
+        Random random = new Random(42);
+        fill(state, random, colorCount);
+        long cells = (long) size * size;
+
+        System.out.printf(
+            "Board %dx%d, %d repetitions, %d cores%n",
+            size,
+            size,
+            repetitions,
+            cores
+        );
+        System.out.printf(
+            "%8s %14s %8s %14s %8s%n",
+            "threads",
+            "scan Mcell/s",
+            "speedup",
+            "drop Mcell/s",
+            "speedup"
+        );
+
+        long[] matches = state.newMask();
+        DropMap drops = new DropMap(size, size);
+        double baseScan = 0;
+        double baseDrop = 0;
+
+        for (int threads : threadCounts(cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelBoardOps ops = new ParallelBoardOps(pool);
+
+            ops.findMatches(state, matches);
+            long scanNanos = 0;
+            for (int i = 0; i < repetitions; i++) {
+                long start = System.nanoTime();
+                ops.findMatches(state, matches);
+                scanNanos += System.nanoTime() - start;
+            }
+
+            long dropNanos = 0;
+            for (int i = 0; i < repetitions; i++) {
+                punchHoles(state, random);
+                drops.reset();
+                long start = System.nanoTime();
+                ops.collapse(state, drops);
+                ops.refill(state, random, colorCount, drops);
+                dropNanos += System.nanoTime() - start;
+            }
+
+            pool.shutdown();
+
+            double scan = throughput(cells, repetitions, scanNanos);
+            double drop = throughput(cells, repetitions, dropNanos);
+            if (threads == 1) {
+                baseScan = scan;
+                baseDrop = drop;
+            }
+
+            System.out.printf(
+                "%8d %14.1f %7.2fx %14.1f %7.2fx%n",
+                threads,
+                scan,
+                scan / baseScan,
+                drop,
+                drop / baseDrop
+            );
+        }
+    }
+
+    /**
+     * Get the pool sizes to measure: powers of two below the core count,
+     * then the core count itself
+     */
+    private static List<Integer> threadCounts(int cores) {
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        return counts;
+    }
+
+    /**
+     * Fill every cell with a random simple candy
+     */
+    private static void fill(BoardState state, Random random, int colorCount) {
+        for (int i = 0; i < state.getRows(); i++) {
+            for (int j = 0; j < state.getCols(); j++) {
+                state.set(
+                    i,
+                    j,
+                    BoardState.encode(
+                        Candy.Type.SIMPLE.ordinal(),
+                        random.nextInt(colorCount)
+                    )
+                );
+            }
+        }
+        state.getDirtyRegion().clear();
+    }
+
+    /**
+     * Empty a random share of the cells, as a cascade step would
+     */
+    private static void punchHoles(BoardState state, Random random) {
+        for (int i = 0; i < state.getRows(); i++) {
+            for (int j = 0; j < state.getCols(); j++) {
+                if (random.nextInt(100) < HOLE_PERCENT) {
+                    state.clear(i, j);
+                }
+            }
+        }
+        state.getDirtyRegion().clear();
+    }
+
+    private static double throughput(long cells, int repetitions, long nanos) {
+        return (cells * repetitions) / (nanos / 1000.0);
+    }
+}
@@ -0,0 +1,118 @@
+package candycrush.tools;
+
+import candycrush.ai.MctsStrategy;
+import candycrush.model.BoardSnapshot;
+import candycrush.model.GameEngine;
+import candycrush.model.GameSeed;
+import candycrush.model.ScoreTable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless benchmark for the Monte Carlo tree search strategy.
+ * Searches the same seeded positions with pools of 1, 2, 4, ... threads up
+ * to the number of cores, each search limited only by its time budget, and
+ * prints the playout rate, the rate per thread and how close the scaling
+ * is to linear.
+ *
+ * Usage: java -cp bin candycrush.tools.MctsBenchmark [size] [millis] [positions]
+ */
+public class MctsBenchmark {
+
+    private static final int DEFAULT_SIZE = 10;
+    private static final int DEFAULT_MILLIS = 500;
+    private static final int DEFAULT_POSITIONS = 8;
+
+    /**
+     * Benchmark entry point
+     *
+     * @param args Optional board size, budget per search and position count
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        int millis = args.length > 1
+            ? Integer.parseInt(args[1])
+            : DEFAULT_MILLIS;
+        int positionCount = args.length > 2
+            ? Integer.parseInt(args[2])
+            : DEFAULT_POSITIONS;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<BoardSnapshot> positions = new ArrayList<>(positionCount);
+        for (int i = 0; i < positionCount; i++) {
+            positions.add(
+                new GameEngine(size, size, new GameSeed(i + 1)).snapshot()
+            );
+        }
+
+        System.out.printf(
+            "Board %dx%d, %d positions, %d ms per search, %d cores%n",
+            size,
+            size,
+            positionCount,
+            millis,
+            cores
+        );
+        System.out.printf(
+            "%8s %14s %16s %10s%n",
+            "threads",
+            "playouts/s",
+            "per thread/s",
+            "scaling"
+        );
+
+        double basePerThread = 0;
+        for (int threads : threadCounts(cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            MctsStrategy strategy = new MctsStrategy(
+                ScoreTable.DEFAULT,
+                pool,
+                Integer.MAX_VALUE,
+                millis,
+                MctsStrategy.DEFAULT_HORIZON,
+                MctsStrategy.DEFAULT_EXPLORATION,
+                1L
+            );
+
+            strategy.findMove(positions.get(0));
+            long playouts = 0;
+            long nanos = 0;
+            for (BoardSnapshot position : positions) {
+                long start = System.nanoTime();
+                strategy.findMove(position);
+                nanos += System.nanoTime() - start;
+                playouts += strategy.getLastPlayouts();
+            }
+
+            pool.shutdown();
+
+            double rate = playouts / (nanos / 1e9);
+            double perThread = rate / threads;
+            if (threads == 1) {
+                basePerThread = perThread;
+            }
+
+            System.out.printf(
+                "%8d %14.0f %16.0f %9.0f%%%n",
+                threads,
+                rate,
+                perThread,
+                100 * perThread / basePerThread
+            );
+        }
+    }
+
+    /**
+     * Get the pool sizes to measure: powers of two below the core count,
+     * then the core count itself
+     */
+    private static List<Integer> threadCounts(int cores) {
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(cores);
+        return counts;
+    }
+}
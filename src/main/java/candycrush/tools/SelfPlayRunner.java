@@ -0,0 +1,370 @@
+package candycrush.tools;
+
+import candycrush.ai.GameAI;
+import candycrush.model.GameEngine;
+import candycrush.model.GameSeed;
+import candycrush.model.MoveResult;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless batch runner that plays many games with each AI strategy.
+ * Games run on the engine alone, with no board, loop or delays, spread
+ * over one thread per core. Game i of every strategy starts from seed
+ * base + i, so strategies are compared on the same boards and refills, and
+ * a run gives the same results whatever the thread count. A game is won
+ * once its score reaches the target, and lost when its moves run out or
+ * no move is left after a shuffle.
+ *
+ * Strategies are those of the {@link StrategyRegistry}, which search to a
+ * fixed depth or playout count with no time budget, so results do not
+ * depend on the machine either. Writes the win rate,
+ * score mean and percentiles, moves used and cascade depth of each
+ * strategy as CSV or JSON, to a file or standard output; timings go to
+ * standard error.
+ *
+ * Usage: java -cp bin candycrush.tools.SelfPlayRunner [games] [strategies] [moves] [target] [csv|json] [file] [seed]
+ */
+public class SelfPlayRunner {
+
+    private static final int DEFAULT_GAMES = 1000;
+    private static final String DEFAULT_STRATEGIES = "EASY,MEDIUM,HARD";
+    private static final int DEFAULT_MOVES = 30;
+    private static final int DEFAULT_TARGET = 1500;
+    private static final long DEFAULT_SEED = 1;
+    private static final int BOARD_SIZE = 10;
+
+    /** Score percentiles reported */
+    private static final int[] PERCENTILES = { 10, 50, 90, 99 };
+
+    /** Games a worker plays per task */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * Runner entry point
+     *
+     * @param args Optional game count, comma-separated strategies, moves per
+     *        game, target score, output format, output file and base seed
+     * @throws FileNotFoundException If the output file cannot be created
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public static void main(String[] args)
+        throws FileNotFoundException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        String[] strategies = (args.length > 1 ? args[1] : DEFAULT_STRATEGIES)
+            .split(",");
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MOVES;
+        int target = args.length > 3
+            ? Integer.parseInt(args[3])
+            : DEFAULT_TARGET;
+        boolean json = args.length > 4 && "json".equalsIgnoreCase(args[4]);
+        String file = args.length > 5 ? args[5] : null;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : DEFAULT_SEED;
+
+        for (String strategy : strategies) {
+            StrategyRegistry.check(strategy);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.err.printf(
+            "%d games per strategy, %d moves, target %d, %d cores%n",
+            games,
+            moves,
+            target,
+            cores
+        );
+
+        ExecutorService workers = Executors.newFixedThreadPool(cores);
+        List<Summary> summaries = new ArrayList<>();
+        try {
+            for (String strategy : strategies) {
+                long start = System.nanoTime();
+                Summary summary = run(
+                    workers,
+                    strategy,
+                    games,
+                    moves,
+                    target,
+                    seed
+                );
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                System.err.printf(
+                    "%s: %d games in %.1f s, %.0f games/s%n",
+                    strategy,
+                    games,
+                    elapsed,
+                    games / elapsed
+                );
+                summaries.add(summary);
+            }
+        } finally {
+            workers.shutdown();
+        }
+
+        PrintStream out = file != null ? new PrintStream(file) : System.out;
+        if (json) {
+            writeJson(out, summaries);
+        } else {
+            writeCsv(out, summaries);
+        }
+        out.flush();
+        if (file != null) {
+            out.close();
+        }
+    }
+
+    /**
+     * Play every game of one strategy in chunks on the workers
+     *
+     * @return Aggregated results
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private static Summary run(
+        ExecutorService workers,
+        String strategy,
+        int games,
+        int moves,
+        int target,
+        long seed
+    ) throws InterruptedException {
+        Results results = new Results(games);
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int first = 0; first < games; first += CHUNK_SIZE) {
+            int from = first;
+            int to = Math.min(games, first + CHUNK_SIZE);
+            chunks.add(
+                workers.submit(() -> {
+                    for (int i = from; i < to; i++) {
+                        GameSeed gameSeed = new GameSeed(seed + i);
+                        play(
+                            results,
+                            i,
+                            StrategyRegistry.create(strategy, gameSeed),
+                            gameSeed,
+                            moves,
+                            target
+                        );
+                    }
+                })
+            );
+        }
+
+        for (Future<?> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(
+                    "Game failed with " + strategy,
+                    e.getCause()
+                );
+            }
+        }
+        return new Summary(strategy, results);
+    }
+
+    /**
+     * Play one game to a win, a loss or a dead board and record it
+     */
+    private static void play(
+        Results results,
+        int game,
+        GameAI.AIStrategy strategy,
+        GameSeed seed,
+        int moves,
+        int target
+    ) {
+        GameEngine engine = new GameEngine(BOARD_SIZE, BOARD_SIZE, seed);
+        MoveResult result = new MoveResult();
+        int used = 0;
+        long cascades = 0;
+        int maxCascade = 0;
+        boolean shuffled = false;
+
+        while (used < moves && engine.getScore() < target) {
+            int[] move = strategy.findMove(engine.snapshot());
+            if (move == null) {
+                if (shuffled || !engine.shuffle()) {
+                    break;
+                }
+                shuffled = true;
+                continue;
+            }
+            if (!engine.playMove(move[0], move[1], move[2], move[3], result)) {
+                break;
+            }
+
+            shuffled = false;
+            used++;
+            cascades += result.getCascadeDepth();
+            maxCascade = Math.max(maxCascade, result.getCascadeDepth());
+        }
+
+        results.scores[game] = engine.getScore();
+        results.moves[game] = used;
+        results.cascades[game] = cascades;
+        results.maxCascades[game] = maxCascade;
+        results.won[game] = engine.getScore() >= target;
+    }
+
+    /**
+     * Per-game results, each game writing only its own slots
+     */
+    private static class Results {
+
+        private final int[] scores;
+        private final int[] moves;
+        private final long[] cascades;
+        private final int[] maxCascades;
+        private final boolean[] won;
+
+        Results(int games) {
+            this.scores = new int[games];
+            this.moves = new int[games];
+            this.cascades = new long[games];
+            this.maxCascades = new int[games];
+            this.won = new boolean[games];
+        }
+    }
+
+    /**
+     * Aggregated results of one strategy
+     */
+    private static class Summary {
+
+        private final String strategy;
+        private final int games;
+        private final int wins;
+        private final double scoreMean;
+        private final int[] scorePercentiles;
+        private final double movesMean;
+        private final double cascadeMean;
+        private final int cascadeMax;
+
+        Summary(String strategy, Results results) {
+            this.strategy = strategy;
+            this.games = results.scores.length;
+
+            int winCount = 0;
+            long scoreSum = 0;
+            long moveSum = 0;
+            long cascadeSum = 0;
+            int maxCascade = 0;
+            for (int i = 0; i < games; i++) {
+                winCount += results.won[i] ? 1 : 0;
+                scoreSum += results.scores[i];
+                moveSum += results.moves[i];
+                cascadeSum += results.cascades[i];
+                maxCascade = Math.max(maxCascade, results.maxCascades[i]);
+            }
+
+            int[] sorted = results.scores.clone();
+            Arrays.sort(sorted);
+
+            this.wins = winCount;
+            this.scoreMean = games == 0 ? 0 : (double) scoreSum / games;
+            this.scorePercentiles = new int[PERCENTILES.length];
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                scorePercentiles[p] = percentile(sorted, PERCENTILES[p]);
+            }
+            this.movesMean = games == 0 ? 0 : (double) moveSum / games;
+            this.cascadeMean = moveSum == 0
+                ? 0
+                : (double) cascadeSum / moveSum;
+            this.cascadeMax = maxCascade;
+        }
+
+        double winRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+    }
+
+    /**
+     * Get a nearest-rank percentile of sorted values
+     */
+    private static int percentile(int[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static void writeCsv(PrintStream out, List<Summary> summaries) {
+        StringBuilder header = new StringBuilder(
+            "strategy,games,wins,win_rate,score_mean"
+        );
+        for (int percent : PERCENTILES) {
+            header.append(",score_p").append(percent);
+        }
+        header.append(",moves_mean,cascade_mean,cascade_max");
+        out.println(header);
+
+        for (Summary s : summaries) {
+            StringBuilder row = new StringBuilder();
+            row
+                .append(s.strategy)
+                .append(',')
+                .append(s.games)
+                .append(',')
+                .append(s.wins)
+                .append(',')
+                .append(format(s.winRate()))
+                .append(',')
+                .append(format(s.scoreMean));
+            for (int value : s.scorePercentiles) {
+                row.append(',').append(value);
+            }
+            row
+                .append(',')
+                .append(format(s.movesMean))
+                .append(',')
+                .append(format(s.cascadeMean))
+                .append(',')
+                .append(s.cascadeMax);
+            out.println(row);
+        }
+    }
+
+    private static void writeJson(PrintStream out, List<Summary> summaries) {
+        out.println("[");
+        for (int i = 0; i < summaries.size(); i++) {
+            Summary s = summaries.get(i);
+            StringBuilder percentiles = new StringBuilder();
+            for (int p = 0; p < PERCENTILES.length; p++) {
+                if (p > 0) {
+                    percentiles.append(", ");
+                }
+                percentiles
+                    .append("\"p")
+                    .append(PERCENTILES[p])
+                    .append("\": ")
+                    .append(s.scorePercentiles[p]);
+            }
+
+            out.println("  {");
+            out.println("    \"strategy\": \"" + s.strategy + "\",");
+            out.println("    \"games\": " + s.games + ",");
+            out.println("    \"wins\": " + s.wins + ",");
+            out.println("    \"winRate\": " + format(s.winRate()) + ",");
+            out.println("    \"scoreMean\": " + format(s.scoreMean) + ",");
+            out.println("    \"scorePercentiles\": {" + percentiles + "},");
+            out.println("    \"movesMean\": " + format(s.movesMean) + ",");
+            out.println("    \"cascadeMean\": " + format(s.cascadeMean) + ",");
+            out.println("    \"cascadeMax\": " + s.cascadeMax);
+            out.println(i + 1 < summaries.size() ? "  }," : "  }");
+        }
+        out.println("]");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+}
@@ -0,0 +1,252 @@
+package candycrush.tools;
+
+import candycrush.model.BoardSnapshot;
+import candycrush.model.GameBoard;
+import candycrush.model.GameEngine;
+import candycrush.model.GameSeed;
+import candycrush.model.GameSession;
+import candycrush.model.Replay;
+import candycrush.model.Zobrist;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless load test for hosting many game sessions in one JVM.
+ * Every session auto-plays with short cascade delays while client threads
+ * fire random selections at random sessions, racing the AI and the cascade
+ * timers on each board. Once the load stops and every board has settled,
+ * each board is checked on its own loop: its replay, played on a fresh
+ * engine, must rebuild the same position and score, and its incremental
+ * hash must equal a full recompute. Any lost or interleaved update breaks
+ * one of the two. Prints move throughput and the round-trip latency of
+ * client calls.
+ *
+ * Usage: java -cp bin candycrush.tools.SessionLoadTest [sessions] [seconds] [clients]
+ */
+public class SessionLoadTest {
+
+    private static final int DEFAULT_SESSIONS = 500;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_CLIENTS = 8;
+    private static final int BOARD_SIZE = 10;
+    private static final long CASCADE_DELAY_MILLIS = 5;
+    private static final int AUTOPLAY_DELAY_MILLIS = 20;
+    private static final long SETTLE_POLL_MILLIS = 10;
+
+    /**
+     * Load test entry point
+     *
+     * @param args Optional session count, duration and client thread count
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int sessionCount = args.length > 0
+            ? Integer.parseInt(args[0])
+            : DEFAULT_SESSIONS;
+        int seconds = args.length > 1
+            ? Integer.parseInt(args[1])
+            : DEFAULT_SECONDS;
+        int clientCount = args.length > 2
+            ? Integer.parseInt(args[2])
+            : DEFAULT_CLIENTS;
+
+        System.out.printf(
+            "%d sessions of %dx%d, %d clients, %d s, %d cores%n",
+            sessionCount,
+            BOARD_SIZE,
+            BOARD_SIZE,
+            clientCount,
+            seconds,
+            Runtime.getRuntime().availableProcessors()
+        );
+
+        List<GameSession> sessions = new ArrayList<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            GameSession session = new GameSession(
+                BOARD_SIZE,
+                BOARD_SIZE,
+                new GameSeed(i + 1)
+            );
+            GameBoard board = session.getBoard();
+            board.setCascadeDelayMillis(CASCADE_DELAY_MILLIS);
+            board.setTargetScore(Integer.MAX_VALUE);
+            board.setMovesLeft(Integer.MAX_VALUE);
+            sessions.add(session);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Client[] clients = new Client[clientCount];
+        Thread[] threads = new Thread[clientCount];
+        for (int i = 0; i < clientCount; i++) {
+            clients[i] = new Client(sessions, running, new Random(i));
+            threads[i] = new Thread(clients[i], "load-client-" + (i + 1));
+        }
+
+        long start = System.nanoTime();
+        for (GameSession session : sessions) {
+            session.startAutoPlay(AUTOPLAY_DELAY_MILLIS);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        Thread.sleep(seconds * 1000L);
+
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (GameSession session : sessions) {
+            session.stopAutoPlay();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        settle(sessions);
+
+        long moves = 0;
+        int failed = 0;
+        for (GameSession session : sessions) {
+            int count = session.call(SessionLoadTest::verify).join();
+            if (count < 0) {
+                failed++;
+            } else {
+                moves += count;
+            }
+        }
+
+        long calls = 0;
+        long[] latencies = new long[0];
+        for (Client client : clients) {
+            calls += client.count;
+            latencies = concat(latencies, client.latencies, client.count);
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf(
+            "%d moves, %.0f moves/s, %d client calls%n",
+            moves,
+            moves / elapsed,
+            calls
+        );
+        System.out.printf(
+            "call latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+            percentile(latencies, 50),
+            percentile(latencies, 99),
+            percentile(latencies, 100)
+        );
+        System.out.printf(
+            "%d of %d sessions verified%n",
+            sessionCount - failed,
+            sessionCount
+        );
+
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Wait until no board is resolving a cascade
+     */
+    private static void settle(List<GameSession> sessions)
+        throws InterruptedException {
+        for (GameSession session : sessions) {
+            while (session.call(GameBoard::isCascading).join()) {
+                Thread.sleep(SETTLE_POLL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Check a settled board against its replay and a full hash recompute.
+     * Runs on the session's loop.
+     *
+     * @return Number of moves played, or -1 if the board is inconsistent
+     */
+    private static int verify(GameBoard board) {
+        BoardSnapshot snapshot = board.snapshot();
+        long hash = 0L;
+        for (int i = 0; i < snapshot.getRows() * snapshot.getCols(); i++) {
+            hash ^= Zobrist.key(i, snapshot.get(i));
+        }
+
+        Replay replay = board.getReplay();
+        GameEngine rebuilt = replay.play();
+        boolean consistent =
+            hash == snapshot.getHash() &&
+            rebuilt.getHash() == snapshot.getHash() &&
+            rebuilt.getScore() == snapshot.getScore();
+
+        if (!consistent) {
+            System.out.println("Inconsistent board, seed " + board.getSeed());
+            return -1;
+        }
+        return replay.getMoveCount();
+    }
+
+    /**
+     * Thread that selects random cells on random sessions and waits for
+     * each call to come back
+     */
+    private static class Client implements Runnable {
+
+        private final List<GameSession> sessions;
+        private final AtomicBoolean running;
+        private final Random random;
+        private long[] latencies;
+        private int count;
+
+        Client(
+            List<GameSession> sessions,
+            AtomicBoolean running,
+            Random random
+        ) {
+            this.sessions = sessions;
+            this.running = running;
+            this.random = random;
+            this.latencies = new long[1024];
+        }
+
+        @Override
+        public void run() {
+            while (running.get()) {
+                GameSession session = sessions.get(
+                    random.nextInt(sessions.size())
+                );
+                int row = random.nextInt(BOARD_SIZE);
+                int col = random.nextInt(BOARD_SIZE);
+
+                long start = System.nanoTime();
+                session.select(row, col).join();
+                record(System.nanoTime() - start);
+            }
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * count);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private static long[] concat(long[] first, long[] second, int length) {
+        long[] result = Arrays.copyOf(first, first.length + length);
+        System.arraycopy(second, 0, result, first.length, length);
+        return result;
+    }
+
+    /**
+     * Get a percentile of sorted nanosecond samples in milliseconds
+     */
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
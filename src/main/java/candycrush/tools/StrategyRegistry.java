@@ -0,0 +1,155 @@
+package candycrush.tools;
+
+import candycrush.ai.ExpectimaxStrategy;
+import candycrush.ai.GameAI;
+import candycrush.ai.MctsStrategy;
+import candycrush.ai.TranspositionTable;
+import candycrush.model.GameSeed;
+import candycrush.model.ScoreTable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Named AI strategies the headless tools can play, each created fresh for
+ * every game from the game's seed.
+ *
+ * The {@link GameAI.Difficulty} levels are registered under their names,
+ * and Monte Carlo tree search as MCTS. Searches are limited by depth or
+ * playout count instead of time, so a strategy plays a seed the same way
+ * on any machine and under any load. MCTS searches on a one-thread pool
+ * owned by the calling thread, since the tools already keep every core
+ * busy with games. Further strategies are added with
+ * {@link #register(String, Function)}.
+ */
+public final class StrategyRegistry {
+
+    /** Budget that never runs out, for searches limited by depth or count */
+    private static final long UNLIMITED_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final int MCTS_PLAYOUTS = 1000;
+    private static final long SEARCH_TABLE_BYTES = 256 * 1024;
+
+    private static final ThreadLocal<ForkJoinPool> SEARCH_POOLS =
+        ThreadLocal.withInitial(() -> new ForkJoinPool(1));
+
+    private static final Map<
+        String,
+        Function<GameSeed, GameAI.AIStrategy>
+    > FACTORIES = new LinkedHashMap<>();
+
+    static {
+        ScoreTable table = ScoreTable.DEFAULT;
+        register(
+            GameAI.Difficulty.EASY.name(),
+            seed ->
+                GameAI.createStrategy(
+                    GameAI.Difficulty.EASY,
+                    table,
+                    seed.aiStream()
+                )
+        );
+        register(
+            GameAI.Difficulty.MEDIUM.name(),
+            seed ->
+                GameAI.createStrategy(
+                    GameAI.Difficulty.MEDIUM,
+                    table,
+                    seed.aiStream()
+                )
+        );
+        register(
+            GameAI.Difficulty.HARD.name(),
+            seed ->
+                GameAI.createStrategy(
+                    GameAI.Difficulty.HARD,
+                    table,
+                    seed.aiStream()
+                )
+        );
+        register(
+            GameAI.Difficulty.EXPERT.name(),
+            seed ->
+                new ExpectimaxStrategy(
+                    table,
+                    ExpectimaxStrategy.DEFAULT_DEPTH,
+                    ExpectimaxStrategy.DEFAULT_SAMPLES,
+                    ExpectimaxStrategy.DEFAULT_BREADTH,
+                    UNLIMITED_MILLIS,
+                    seed.getSeed(),
+                    new TranspositionTable(SEARCH_TABLE_BYTES)
+                )
+        );
+        register(
+            "MCTS",
+            seed ->
+                new MctsStrategy(
+                    table,
+                    SEARCH_POOLS.get(),
+                    MCTS_PLAYOUTS,
+                    UNLIMITED_MILLIS,
+                    MctsStrategy.DEFAULT_HORIZON,
+                    MctsStrategy.DEFAULT_EXPLORATION,
+                    seed.getSeed()
+                )
+        );
+    }
+
+    private StrategyRegistry() {}
+
+    /**
+     * Register a strategy, replacing any registered under the same name
+     *
+     * @param name Name the tools accept
+     * @param factory Creates the strategy of one game from its seed
+     */
+    public static synchronized void register(
+        String name,
+        Function<GameSeed, GameAI.AIStrategy> factory
+    ) {
+        FACTORIES.put(name, factory);
+    }
+
+    /**
+     * Get the registered names, in registration order
+     *
+     * @return New list of names
+     */
+    public static synchronized List<String> getNames() {
+        return new ArrayList<>(FACTORIES.keySet());
+    }
+
+    /**
+     * Check that a strategy is registered
+     *
+     * @param name Strategy name
+     * @throws IllegalArgumentException If no strategy has that name
+     */
+    public static synchronized void check(String name) {
+        if (!FACTORIES.containsKey(name)) {
+            throw new IllegalArgumentException(
+                "Unknown strategy " + name + ", expected one of " + getNames()
+            );
+        }
+    }
+
+    /**
+     * Create a strategy for one game
+     *
+     * @param name Strategy name
+     * @param seed Seed of the game
+     * @return New strategy; not thread-safe
+     * @throws IllegalArgumentException If no strategy has that name
+     */
+    public static GameAI.AIStrategy create(String name, GameSeed seed) {
+        Function<GameSeed, GameAI.AIStrategy> factory;
+        synchronized (StrategyRegistry.class) {
+            check(name);
+            factory = FACTORIES.get(name);
+        }
+        return factory.apply(seed);
+    }
+}
@@ -0,0 +1,585 @@
+package candycrush.tools;
+
+import candycrush.ai.GameAI;
+import candycrush.model.GameEngine;
+import candycrush.model.GameSeed;
+import candycrush.model.MoveResult;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless tournament between AI strategies, and a regression gate for
+ * them.
+ *
+ * Every strategy plays the same seeded games: game i starts from seed
+ * base + i and gets the same refills for the same moves, with a fixed
+ * number of moves and no target. The games of all strategies are spread
+ * together over one thread per core. For each strategy it prints the score
+ * distribution and the latency of its decisions, and for each pair of
+ * strategies a paired comparison over the shared seeds: the mean score
+ * difference with its 95% confidence interval, the two-sided p-value of a
+ * paired z-test, and how many seeds each side won.
+ *
+ * Scores only depend on the seeds, so they are the same on every run and
+ * machine. Given a baseline file that does not exist yet, the run's
+ * results are written to it; given one that exists, the run is compared
+ * against it and the tool exits with status 1 if a strategy's mean score
+ * fell by more than two standard errors, or its 90th percentile latency
+ * grew by more than half. The gate leaves out the rarer latencies, which a
+ * single garbage collection or compilation can move tenfold. Latencies
+ * depend on the machine and its load, so a baseline should be recorded on
+ * the machine that runs the gate.
+ *
+ * Usage: java -cp bin candycrush.tools.StrategyTournament [games] [strategies] [moves] [baseline] [seed]
+ */
+public class StrategyTournament {
+
+    private static final int DEFAULT_GAMES = 200;
+    private static final int DEFAULT_MOVES = 30;
+    private static final long DEFAULT_SEED = 1;
+    private static final int BOARD_SIZE = 10;
+
+    /** Games a worker plays per task */
+    private static final int CHUNK_SIZE = 16;
+
+    /** Games per strategy played first to warm up, then discarded */
+    private static final int WARMUP_GAMES = 4;
+
+    /** Standard errors a mean score may fall below the baseline */
+    private static final double SCORE_TOLERANCE = 2.0;
+
+    /** Factor the p90 latency may grow by over the baseline */
+    private static final double LATENCY_TOLERANCE = 1.5;
+
+    /** Latency growth in microseconds always allowed, for fast strategies */
+    private static final double LATENCY_SLACK_MICROS = 50;
+
+    /** z of a two-sided 95% confidence interval */
+    private static final double Z_95 = 1.959964;
+
+    private static final String BASELINE_HEADER =
+        "strategy,games,moves,seed,score_mean,score_sd," +
+        "latency_p50_us,latency_p90_us";
+
+    /**
+     * Tournament entry point
+     *
+     * @param args Optional game count, comma-separated strategies (all
+     *        registered by default), moves per game, baseline file and
+     *        base seed
+     * @throws IOException If the baseline cannot be read or written
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public static void main(String[] args)
+        throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        List<String> strategies = args.length > 1 && !args[1].isEmpty()
+            ? Arrays.asList(args[1].split(","))
+            : StrategyRegistry.getNames();
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MOVES;
+        String baseline = args.length > 3 ? args[3] : null;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_SEED;
+
+        if (games < 2 || moves < 1) {
+            throw new IllegalArgumentException(
+                "A tournament needs at least 2 games of 1 move"
+            );
+        }
+        for (String strategy : strategies) {
+            StrategyRegistry.check(strategy);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.err.printf(
+            "%d games per strategy, %d moves, seed %d, %d cores%n",
+            games,
+            moves,
+            seed,
+            cores
+        );
+
+        ExecutorService workers = Executors.newFixedThreadPool(cores);
+        List<Standing> standings;
+        try {
+            long start = System.nanoTime();
+            play(workers, strategies, seed + games, WARMUP_GAMES, moves);
+            standings = play(workers, strategies, seed, games, moves);
+            System.err.printf(
+                "Played %d games in %.1f s%n",
+                games * strategies.size(),
+                (System.nanoTime() - start) / 1e9
+            );
+        } finally {
+            workers.shutdown();
+        }
+
+        printStandings(standings);
+        printComparisons(standings);
+
+        if (baseline == null) {
+            return;
+        }
+        File file = new File(baseline);
+        if (!file.exists()) {
+            writeBaseline(file, standings, moves, seed);
+            System.out.println();
+            System.out.println("Baseline written to " + file);
+        } else if (!checkBaseline(file, standings, moves, seed)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Play the same games with every strategy, all strategies at once in
+     * chunks on the workers
+     *
+     * @return Results of each strategy, in the given order
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private static List<Standing> play(
+        ExecutorService workers,
+        List<String> strategies,
+        long seed,
+        int games,
+        int moves
+    ) throws InterruptedException {
+        List<Standing> standings = new ArrayList<>();
+        List<Future<?>> chunks = new ArrayList<>();
+        for (String strategy : strategies) {
+            Standing standing = new Standing(strategy, games);
+            standings.add(standing);
+            for (int first = 0; first < games; first += CHUNK_SIZE) {
+                int from = first;
+                int to = Math.min(games, first + CHUNK_SIZE);
+                chunks.add(
+                    workers.submit(() -> {
+                        for (int i = from; i < to; i++) {
+                            play(standing, i, new GameSeed(seed + i), moves);
+                        }
+                    })
+                );
+            }
+        }
+
+        for (Future<?> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(
+                    "Tournament game failed",
+                    e.getCause()
+                );
+            }
+        }
+        return standings;
+    }
+
+    /**
+     * Play one game to its last move or a dead board, timing every decision
+     */
+    private static void play(
+        Standing standing,
+        int game,
+        GameSeed seed,
+        int moves
+    ) {
+        GameAI.AIStrategy strategy = StrategyRegistry.create(
+            standing.strategy,
+            seed
+        );
+        GameEngine engine = new GameEngine(BOARD_SIZE, BOARD_SIZE, seed);
+        MoveResult result = new MoveResult();
+        long[] latencies = new long[moves];
+        int decisions = 0;
+        int used = 0;
+        boolean shuffled = false;
+
+        while (used < moves) {
+            long start = System.nanoTime();
+            int[] move = strategy.findMove(engine.snapshot());
+            long elapsed = System.nanoTime() - start;
+            if (decisions == latencies.length) {
+                latencies = Arrays.copyOf(latencies, 2 * decisions);
+            }
+            latencies[decisions++] = elapsed;
+
+            if (move == null) {
+                if (shuffled || !engine.shuffle()) {
+                    break;
+                }
+                shuffled = true;
+                continue;
+            }
+            if (!engine.playMove(move[0], move[1], move[2], move[3], result)) {
+                break;
+            }
+            shuffled = false;
+            used++;
+        }
+
+        standing.scores[game] = engine.getScore();
+        standing.latencies[game] = Arrays.copyOf(latencies, decisions);
+    }
+
+    private static void printStandings(List<Standing> standings) {
+        System.out.println("Scores");
+        System.out.printf(
+            "%-10s %10s %10s %8s %8s %8s %8s %8s%n",
+            "strategy",
+            "mean",
+            "sd",
+            "min",
+            "p10",
+            "p50",
+            "p90",
+            "max"
+        );
+        for (Standing s : standings) {
+            int[] sorted = s.scores.clone();
+            Arrays.sort(sorted);
+            System.out.printf(
+                Locale.ROOT,
+                "%-10s %10.1f %10.1f %8d %8d %8d %8d %8d%n",
+                s.strategy,
+                s.scoreMean(),
+                s.scoreSd(),
+                sorted[0],
+                sorted[percentileIndex(sorted.length, 10)],
+                sorted[percentileIndex(sorted.length, 50)],
+                sorted[percentileIndex(sorted.length, 90)],
+                sorted[sorted.length - 1]
+            );
+        }
+
+        System.out.println();
+        System.out.println("Decision latency (us)");
+        System.out.printf(
+            "%-10s %10s %10s %10s %10s %10s%n",
+            "strategy",
+            "decisions",
+            "p50",
+            "p90",
+            "p99",
+            "max"
+        );
+        for (Standing s : standings) {
+            long[] sorted = s.sortedLatencies();
+            System.out.printf(
+                Locale.ROOT,
+                "%-10s %10d %10.1f %10.1f %10.1f %10.1f%n",
+                s.strategy,
+                sorted.length,
+                micros(sorted, 50),
+                micros(sorted, 90),
+                micros(sorted, 99),
+                micros(sorted, 100)
+            );
+        }
+    }
+
+    /**
+     * Compare every pair of strategies seed by seed
+     */
+    private static void printComparisons(List<Standing> standings) {
+        if (standings.size() < 2) {
+            return;
+        }
+
+        System.out.println();
+        System.out.println("Paired comparison (A - B, same seeds)");
+        System.out.printf(
+            "%-10s %-10s %10s %23s %10s %17s%n",
+            "A",
+            "B",
+            "mean diff",
+            "95% CI",
+            "p-value",
+            "wins/ties/losses"
+        );
+        for (int a = 0; a < standings.size(); a++) {
+            for (int b = a + 1; b < standings.size(); b++) {
+                printComparison(standings.get(a), standings.get(b));
+            }
+        }
+    }
+
+    private static void printComparison(Standing a, Standing b) {
+        int games = a.scores.length;
+        double[] diffs = new double[games];
+        int wins = 0;
+        int ties = 0;
+        for (int i = 0; i < games; i++) {
+            diffs[i] = a.scores[i] - b.scores[i];
+            wins += diffs[i] > 0 ? 1 : 0;
+            ties += diffs[i] == 0 ? 1 : 0;
+        }
+
+        double mean = mean(diffs);
+        double error = standardDeviation(diffs, mean) / Math.sqrt(games);
+        double p = error == 0
+            ? (mean == 0 ? 1 : 0)
+            : erfc(Math.abs(mean / error) / Math.sqrt(2));
+        System.out.printf(
+            Locale.ROOT,
+            "%-10s %-10s %10.1f [%10.1f, %10.1f] %10.4f%s %16s%n",
+            a.strategy,
+            b.strategy,
+            mean,
+            mean - Z_95 * error,
+            mean + Z_95 * error,
+            p,
+            p < 0.05 ? "*" : " ",
+            wins + "/" + ties + "/" + (games - wins - ties)
+        );
+    }
+
+    private static void writeBaseline(
+        File file,
+        List<Standing> standings,
+        int moves,
+        long seed
+    ) throws FileNotFoundException {
+        try (PrintStream out = new PrintStream(file)) {
+            out.println(BASELINE_HEADER);
+            for (Standing s : standings) {
+                long[] sorted = s.sortedLatencies();
+                out.println(
+                    String.join(
+                        ",",
+                        s.strategy,
+                        String.valueOf(s.scores.length),
+                        String.valueOf(moves),
+                        String.valueOf(seed),
+                        format(s.scoreMean()),
+                        format(s.scoreSd()),
+                        format(micros(sorted, 50)),
+                        format(micros(sorted, 90))
+                    )
+                );
+            }
+        }
+    }
+
+    /**
+     * Compare the standings against a baseline and print the verdict of
+     * each strategy
+     *
+     * @return true if no strategy regressed
+     * @throws IOException If the baseline cannot be read
+     */
+    private static boolean checkBaseline(
+        File file,
+        List<Standing> standings,
+        int moves,
+        long seed
+    ) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        if (lines.isEmpty() || !BASELINE_HEADER.equals(lines.get(0))) {
+            throw new IllegalArgumentException(
+                "Not a tournament baseline: " + file
+            );
+        }
+        Map<String, String[]> rows = new HashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (!line.isEmpty()) {
+                String[] row = line.split(",");
+                rows.put(row[0], row);
+            }
+        }
+
+        System.out.println();
+        System.out.println("Regression check against " + file);
+        boolean passed = true;
+        for (Standing s : standings) {
+            String[] row = rows.get(s.strategy);
+            if (row == null) {
+                System.out.printf("%-10s not in baseline%n", s.strategy);
+                continue;
+            }
+            if (
+                Integer.parseInt(row[1]) != s.scores.length ||
+                Integer.parseInt(row[2]) != moves ||
+                Long.parseLong(row[3]) != seed
+            ) {
+                System.out.printf(
+                    "%-10s FAIL baseline played %s games of %s moves " +
+                    "from seed %s%n",
+                    s.strategy,
+                    row[1],
+                    row[2],
+                    row[3]
+                );
+                passed = false;
+                continue;
+            }
+
+            double baseMean = Double.parseDouble(row[4]);
+            double baseError =
+                Double.parseDouble(row[5]) / Math.sqrt(s.scores.length);
+            double floor = baseMean - SCORE_TOLERANCE * baseError;
+            double baseP90 = Double.parseDouble(row[7]);
+            double ceiling = baseP90 * LATENCY_TOLERANCE + LATENCY_SLACK_MICROS;
+            double mean = s.scoreMean();
+            double p90 = micros(s.sortedLatencies(), 90);
+
+            boolean scoreOk = mean >= floor;
+            boolean latencyOk = p90 <= ceiling;
+            passed &= scoreOk && latencyOk;
+            System.out.printf(
+                Locale.ROOT,
+                "%-10s %s score %.1f (baseline %.1f, floor %.1f), " +
+                "p90 %.1f us (baseline %.1f, ceiling %.1f)%n",
+                s.strategy,
+                scoreOk && latencyOk ? "ok  " : "FAIL",
+                mean,
+                baseMean,
+                floor,
+                p90,
+                baseP90,
+                ceiling
+            );
+        }
+        System.out.println(passed ? "No regression" : "Regression found");
+        return passed;
+    }
+
+    /**
+     * Get the index of a nearest-rank percentile in sorted values
+     */
+    private static int percentileIndex(int length, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * length) - 1;
+        return Math.max(0, index);
+    }
+
+    /**
+     * Get a nearest-rank percentile of sorted nanosecond latencies
+     *
+     * @return Microseconds, 0 if there are none
+     */
+    private static double micros(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[percentileIndex(sorted.length, percent)] / 1e3;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * Get the sample standard deviation
+     */
+    private static double standardDeviation(double[] values, double mean) {
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    /**
+     * Complementary error function, with a relative error below 1.2e-7
+     * (Chebyshev fit from Numerical Recipes)
+     */
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double r =
+            t *
+            Math.exp(
+                -z * z -
+                1.26551223 +
+                t *
+                (1.00002368 +
+                    t *
+                    (0.37409196 +
+                        t *
+                        (0.09678418 +
+                            t *
+                            (-0.18628806 +
+                                t *
+                                (0.27886807 +
+                                    t *
+                                    (-1.13520398 +
+                                        t *
+                                        (1.48851587 +
+                                            t *
+                                            (-0.82215223 +
+                                                t * 0.17087277))))))))
+            );
+        return x >= 0 ? r : 2 - r;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    /**
+     * Results of one strategy, each game writing only its own slots
+     */
+    private static class Standing {
+
+        private final String strategy;
+        private final int[] scores;
+        private final long[][] latencies;
+
+        Standing(String strategy, int games) {
+            this.strategy = strategy;
+            this.scores = new int[games];
+            this.latencies = new long[games][];
+        }
+
+        double scoreMean() {
+            return mean(scoreValues());
+        }
+
+        double scoreSd() {
+            double[] values = scoreValues();
+            return standardDeviation(values, mean(values));
+        }
+
+        private double[] scoreValues() {
+            double[] values = new double[scores.length];
+            for (int i = 0; i < scores.length; i++) {
+                values[i] = scores[i];
+            }
+            return values;
+        }
+
+        /**
+         * Get the latencies of all decisions of all games, sorted
+         */
+        long[] sortedLatencies() {
+            int count = 0;
+            for (long[] game : latencies) {
+                count += game.length;
+            }
+            long[] all = new long[count];
+            int at = 0;
+            for (long[] game : latencies) {
+                System.arraycopy(game, 0, all, at, game.length);
+                at += game.length;
+            }
+            Arrays.sort(all);
+            return all;
+        }
+    }
+}
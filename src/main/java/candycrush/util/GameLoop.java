@@ -0,0 +1,373 @@
+package candycrush.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the work of one game session: cascade delays, the timed mode
+ * countdown, auto-play pacing and any action posted with
+ * {@link #execute(Runnable)}.
+ *
+ * Each loop is a mailbox: its actions run one at a time, in the order they
+ * became due, so the session's board has a single writer and needs no
+ * locks. Loops take turns on one application-wide pool of worker threads,
+ * one per core unless the game.loop.workers property says otherwise, so
+ * different sessions run in parallel while the thread count stays bounded
+ * no matter how many sessions exist. A loop hands its worker back after a
+ * short batch of actions so a busy session cannot starve the others.
+ * Delays are measured by a separate timer pool, sized by the
+ * game.loop.threads property, that only posts due actions to their loop.
+ * Each loop can be paused, resumed and cancelled independently.
+ */
+public class GameLoop {
+
+    private static final Logger LOGGER = Logger.getLogger(
+        GameLoop.class.getName()
+    );
+
+    /** Actions a loop runs before handing its worker to another loop */
+    private static final int BATCH_SIZE = 32;
+
+    private static final ThreadLocal<GameLoop> CURRENT = new ThreadLocal<>();
+
+    private static ScheduledExecutorService executor;
+    private static ExecutorService workers;
+
+    private final Set<Task> tasks;
+    private final List<Task> deferred;
+    private final Queue<Runnable> mailbox;
+    private final AtomicBoolean draining;
+    private volatile boolean paused;
+
+    /**
+     * Create a loop for a new game session
+     */
+    public GameLoop() {
+        this.tasks = ConcurrentHashMap.newKeySet();
+        this.deferred = new ArrayList<>();
+        this.mailbox = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean();
+    }
+
+    /**
+     * Returns the shared timer, creating it on first use
+     *
+     * @return Timer shared by all game loops
+     */
+    private static synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(
+                1,
+                ConfigManager.getInstance().getIntProperty("game.loop.threads", 2)
+            );
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(
+                threads,
+                daemonThreads("game-timer-")
+            );
+            pool.setRemoveOnCancelPolicy(true);
+            executor = pool;
+            LOGGER.info(
+                "Game loop timer started with " + threads + " thread(s)"
+            );
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the shared worker pool, creating it on first use
+     *
+     * @return Workers that run the actions of all game loops
+     */
+    private static synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            int threads = Math.max(
+                1,
+                ConfigManager.getInstance()
+                    .getIntProperty(
+                        "game.loop.workers",
+                        Runtime.getRuntime().availableProcessors()
+                    )
+            );
+            workers = Executors.newFixedThreadPool(
+                threads,
+                daemonThreads("game-loop-")
+            );
+            LOGGER.info("Game loop started with " + threads + " worker(s)");
+        }
+        return workers;
+    }
+
+    /**
+     * Create a factory for numbered daemon threads
+     *
+     * @param prefix Thread name prefix
+     * @return Thread factory
+     */
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(
+                runnable,
+                prefix + counter.incrementAndGet()
+            );
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Post an action to run on this loop as soon as the actions before it
+     * have run. Posted actions run even while the loop is paused.
+     *
+     * @param action Action to run
+     */
+    public void execute(Runnable action) {
+        mailbox.add(action);
+        if (draining.compareAndSet(false, true)) {
+            getWorkers().execute(this::drain);
+        }
+    }
+
+    /**
+     * Post an action that computes a result on this loop
+     *
+     * @param action Action to run
+     * @return Future completed with the action's result or failure
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> action) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(action.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Check whether the calling thread is running one of this loop's
+     * actions, and so may touch the state the loop confines
+     *
+     * @return true on this loop
+     */
+    public boolean isLoopThread() {
+        return CURRENT.get() == this;
+    }
+
+    /**
+     * Run a batch of posted actions, then hand the worker back, asking for
+     * another turn if more actions are waiting
+     */
+    private void drain() {
+        CURRENT.set(this);
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable action = mailbox.poll();
+                if (action == null) {
+                    break;
+                }
+
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Game loop action failed", e);
+                }
+            }
+        } finally {
+            CURRENT.remove();
+            draining.set(false);
+            if (!mailbox.isEmpty() && draining.compareAndSet(false, true)) {
+                getWorkers().execute(this::drain);
+            }
+        }
+    }
+
+    /**
+     * Run an action once after a delay
+     *
+     * @param action Action to run
+     * @param delayMillis Delay in milliseconds
+     * @return Handle that can cancel the action
+     */
+    public Task schedule(Runnable action, long delayMillis) {
+        Task task = new Task(action, false);
+        tasks.add(task);
+        task.future = getExecutor()
+            .schedule(task::post, delayMillis, TimeUnit.MILLISECONDS);
+        return task;
+    }
+
+    /**
+     * Run an action repeatedly at a fixed rate. Ticks that fall while the
+     * loop is paused, or while the previous tick is still waiting to run,
+     * are skipped.
+     *
+     * @param action Action to run
+     * @param initialDelayMillis Delay before the first run in milliseconds
+     * @param periodMillis Period between runs in milliseconds
+     * @return Handle that can cancel the action
+     */
+    public Task scheduleAtFixedRate(
+        Runnable action,
+        long initialDelayMillis,
+        long periodMillis
+    ) {
+        Task task = new Task(action, true);
+        tasks.add(task);
+        task.future = getExecutor()
+            .scheduleAtFixedRate(
+                task::post,
+                initialDelayMillis,
+                periodMillis,
+                TimeUnit.MILLISECONDS
+            );
+        return task;
+    }
+
+    /**
+     * Pause the loop. One-shot actions that come due while paused run on
+     * {@link #resume()}; repeating actions skip their ticks.
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Resume the loop and run the one-shot actions that came due meanwhile
+     */
+    public synchronized void resume() {
+        paused = false;
+
+        for (Task task : deferred) {
+            if (!task.cancelled) {
+                task.post();
+            }
+        }
+        deferred.clear();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Cancel every pending and repeating action of this loop. Actions
+     * already posted with {@link #execute(Runnable)} still run. The loop
+     * can still schedule new actions afterwards.
+     */
+    public synchronized void cancelAll() {
+        for (Task task : new ArrayList<>(tasks)) {
+            task.cancel();
+        }
+        deferred.clear();
+    }
+
+    /**
+     * Park a one-shot task that came due while paused
+     *
+     * @return true if the task was parked, false if the loop is running
+     */
+    private synchronized boolean deferIfPaused(Task task) {
+        if (paused) {
+            deferred.add(task);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Handle for a scheduled action
+     */
+    public class Task {
+
+        private final Runnable action;
+        private final boolean repeating;
+        private final AtomicBoolean queued;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+
+        private Task(Runnable action, boolean repeating) {
+            this.action = action;
+            this.repeating = repeating;
+            this.queued = new AtomicBoolean();
+        }
+
+        /**
+         * Hand the action to the loop's mailbox once it is due, at most
+         * once at a time
+         */
+        private void post() {
+            if (!cancelled && queued.compareAndSet(false, true)) {
+                execute(this::run);
+            }
+        }
+
+        private void run() {
+            queued.set(false);
+            if (cancelled) {
+                return;
+            }
+
+            if (repeating) {
+                if (paused) {
+                    return;
+                }
+            } else if (deferIfPaused(this)) {
+                return;
+            }
+
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Game loop task failed", e);
+            } finally {
+                if (!repeating) {
+                    done = true;
+                    tasks.remove(this);
+                }
+            }
+        }
+
+        /**
+         * Cancel the action; a run already in progress is not interrupted
+         */
+        public void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> current = future;
+            if (current != null) {
+                current.cancel(false);
+            }
+            tasks.remove(this);
+        }
+
+        /**
+         * Check whether the action was cancelled or, for one-shot actions,
+         * has finished running
+         *
+         * @return true if the action will not run again
+         */
+        public boolean isDone() {
+            return cancelled || done;
+        }
+    }
+}
@@ -2,9 +2,16 @@ package candycrush.view.game;
 
 import candycrush.ai.GameAI;
 import candycrush.audio.AudioManager;
+import candycrush.audio.GameAudio;
 import candycrush.model.Candy;
+import candycrush.model.DropMap;
+import candycrush.model.EventBatch;
 import candycrush.model.GameBoard;
+import candycrush.model.GameEvent;
+import candycrush.model.GameEventBus;
+import candycrush.model.GameSession;
 import candycrush.util.ConfigManager;
+import candycrush.util.GameLoop;
 import candycrush.util.ResourceLoader;
 import candycrush.util.ThemeManager;
 import candycrush.view.components.FancyButton;
@@ -15,7 +22,6 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
 import java.util.List;
-import java.util.Timer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
@@ -24,7 +30,7 @@ import javax.swing.*;
  * The main game screen where the gameplay occurs.
  * Handles rendering the game board, user interactions, animations, and game state.
  */
-public class GameScreen extends JFrame implements Observer {
+public class GameScreen extends JFrame {
 
     private static final Logger LOGGER = Logger.getLogger(
         GameScreen.class.getName()
@@ -32,11 +38,14 @@ public class GameScreen extends JFrame implements Observer {
     private static final int BOARD_SIZE = 10;
     private static final int CANDY_SIZE = 60;
     private static final int BOARD_PADDING = 20;
+    private static final long DROP_MILLIS = 300;
+    private static final int FRAME_MILLIS = 16;
 
+    private GameSession gameSession;
     private GameBoard gameBoard;
     private GameMode gameMode;
     private GameAI gameAI;
-    private Thread aiThread;
+    private GameLoop gameLoop;
 
     private JPanel gameBoardPanel;
     private JLabel scoreLabel;
@@ -52,12 +61,19 @@ public class GameScreen extends JFrame implements Observer {
     private boolean isPaused;
     private boolean isAnimating;
     private int secondsRemaining;
-    private Timer gameTimer;
+    private GameLoop.Task gameTimer;
     private int hintCount;
     private int hintLimit = 3;
 
     private javax.swing.Timer animationTimer;
     private List<CandyAnimation> animations;
+    private DropMap drops;
+    private DropMap dropBuffer;
+    private long dropStartMillis;
+
+    private GameEventBus.Subscription boardEvents;
+    private GameAudio gameAudio;
+    private javax.swing.Timer frameTimer;
 
     public enum GameMode {
         CLASSIC("Classic Mode", "Reach the target score with limited moves"),
@@ -165,8 +181,10 @@ public class GameScreen extends JFrame implements Observer {
         }
 
         animations = new ArrayList<>();
-        gameBoard = new GameBoard(BOARD_SIZE, BOARD_SIZE);
-        gameBoard.addObserver(this);
+        gameSession = new GameSession(BOARD_SIZE, BOARD_SIZE);
+        gameBoard = gameSession.getBoard();
+        gameLoop = gameSession.getLoop();
+        subscribe(gameBoard);
 
         String difficulty = ConfigManager.getInstance()
             .getProperty("game.default.difficulty", "MEDIUM");
@@ -194,21 +212,27 @@ public class GameScreen extends JFrame implements Observer {
             }
         }
 
-        gameAI = new GameAI(gameBoard);
+        gameAI = gameSession.getAI();
         difficulty = ConfigManager.getInstance()
             .getProperty("ai.autoplay.difficulty", "MEDIUM");
         if ("EASY".equals(difficulty)) {
             gameAI.setDifficulty(GameAI.Difficulty.EASY);
         } else if ("HARD".equals(difficulty)) {
             gameAI.setDifficulty(GameAI.Difficulty.HARD);
+        } else if ("EXPERT".equals(difficulty)) {
+            gameAI.setDifficulty(GameAI.Difficulty.EXPERT);
         } else {
             gameAI.setDifficulty(GameAI.Difficulty.MEDIUM);
         }
+        gameSession.precomputeHint();
 
         hintCount = 0;
 
         initializeUI();
 
+        frameTimer = new javax.swing.Timer(FRAME_MILLIS, e -> pollEvents());
+        frameTimer.start();
+
         if (AudioManager.getInstance().isMusicEnabled()) {
             AudioManager.getInstance().startBackgroundMusic();
         }
@@ -269,7 +293,7 @@ public class GameScreen extends JFrame implements Observer {
                         col >= 0 &&
                         col < BOARD_SIZE
                     ) {
-                        gameBoard.selectCandy(row, col);
+                        gameSession.select(row, col);
                     }
                 }
             }
@@ -356,10 +380,7 @@ public class GameScreen extends JFrame implements Observer {
         int x = BOARD_PADDING + col * CANDY_SIZE;
         int y = BOARD_PADDING + row * CANDY_SIZE;
 
-        float animOffset = candy.getAnimationOffset();
-        if (animOffset != 0) {
-            y -= animOffset * CANDY_SIZE;
-        }
+        y -= (int) (dropOffset(row, col) * CANDY_SIZE);
 
         Color candyColor;
         switch (candy.getCandyColor()) {
@@ -589,13 +610,12 @@ public class GameScreen extends JFrame implements Observer {
 
         JButton autoplayButton = new JButton("Auto Play");
         autoplayButton.addActionListener(e -> {
-            if (aiThread != null && aiThread.isAlive()) {
-                aiThread.interrupt();
-                aiThread = null;
+            if (gameSession.isAutoPlaying()) {
+                gameSession.stopAutoPlay();
                 autoplayButton.setText("Auto Play");
             } else {
                 autoplayButton.setText("Stop Auto Play");
-                aiThread = gameAI.startAutoPlay(300);
+                gameSession.startAutoPlay(300);
             }
         });
 
@@ -674,6 +694,38 @@ public class GameScreen extends JFrame implements Observer {
             }
         );
 
+        inputMap.put(
+            KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK),
+            "undo"
+        );
+        actionMap.put(
+            "undo",
+            new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (!isPaused) {
+                        gameSession.undo();
+                    }
+                }
+            }
+        );
+
+        inputMap.put(
+            KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK),
+            "redo"
+        );
+        actionMap.put(
+            "redo",
+            new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (!isPaused) {
+                        gameSession.redo();
+                    }
+                }
+            }
+        );
+
         inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F, 0), "fullscreen");
         actionMap.put(
             "fullscreen",
@@ -703,34 +755,30 @@ public class GameScreen extends JFrame implements Observer {
      * Start the game timer for timed mode
      */
     private void startGameTimer() {
-        gameTimer = new Timer();
-        gameTimer.scheduleAtFixedRate(
-            new TimerTask() {
-                @Override
-                public void run() {
-                    if (!isPaused) {
-                        secondsRemaining--;
+        gameTimer = gameLoop.scheduleAtFixedRate(
+            () -> {
+                if (!isPaused) {
+                    secondsRemaining--;
 
-                        SwingUtilities.invokeLater(() -> {
-                            if (timeLabel != null) {
-                                timeLabel.setText(formatTime(secondsRemaining));
+                    SwingUtilities.invokeLater(() -> {
+                        if (timeLabel != null) {
+                            timeLabel.setText(formatTime(secondsRemaining));
 
-                                if (secondsRemaining <= 10) {
-                                    timeLabel.setForeground(Color.RED);
-                                }
+                            if (secondsRemaining <= 10) {
+                                timeLabel.setForeground(Color.RED);
                             }
-                        });
+                        }
+                    });
 
-                        if (secondsRemaining <= 0) {
-                            gameTimer.cancel();
+                    if (secondsRemaining <= 0) {
+                        gameTimer.cancel();
 
-                            SwingUtilities.invokeLater(() -> {
-                                endGame(
-                                    gameBoard.getScore() >=
-                                    gameBoard.getTargetScore()
-                                );
-                            });
-                        }
+                        SwingUtilities.invokeLater(() -> {
+                            endGame(
+                                gameBoard.getScore() >=
+                                gameBoard.getTargetScore()
+                            );
+                        });
                     }
                 }
             },
@@ -749,12 +797,25 @@ public class GameScreen extends JFrame implements Observer {
     }
 
     /**
-     * Show hint by highlighting a possible move
+     * Ask the session's AI for a hint; it is shown when the search answers,
+     * within the hint budget, unless the board has changed by then
      */
     private void showHint() {
         if (isPaused || isAnimating) return;
 
-        int[] move = gameAI.findBestMove();
+        gameSession
+            .hint()
+            .thenAccept(move ->
+                SwingUtilities.invokeLater(() -> showHint(move))
+            );
+    }
+
+    /**
+     * Show hint by highlighting a possible move
+     *
+     * @param move Move as [row1, col1, row2, col2], or null if none exists
+     */
+    private void showHint(int[] move) {
         if (move != null) {
             Candy candy1 = gameBoard.getCandyAt(move[0], move[1]);
             Candy candy2 = gameBoard.getCandyAt(move[2], move[3]);
@@ -794,12 +855,17 @@ public class GameScreen extends JFrame implements Observer {
                     .playSound(AudioManager.SOUND_BUTTON_CLICK);
             }
         } else {
-            JOptionPane.showMessageDialog(
+            int response = JOptionPane.showConfirmDialog(
                 this,
-                "No valid moves found! Try shuffling the board.",
+                "No valid moves found! Shuffle the board?",
                 "No Hints Available",
+                JOptionPane.YES_NO_OPTION,
                 JOptionPane.INFORMATION_MESSAGE
             );
+
+            if (response == JOptionPane.YES_OPTION) {
+                gameSession.shuffle();
+            }
         }
     }
 
@@ -811,6 +877,7 @@ public class GameScreen extends JFrame implements Observer {
 
         if (isPaused) {
             pauseButton.setText("Resume");
+            gameLoop.pause();
             if (gameMode == GameMode.TIMED) {
                 AudioManager.getInstance().pauseBackgroundMusic();
             }
@@ -824,6 +891,7 @@ public class GameScreen extends JFrame implements Observer {
 
             isPaused = false;
             pauseButton.setText("Pause");
+            gameLoop.resume();
             if (gameMode == GameMode.TIMED) {
                 AudioManager.getInstance().resumeBackgroundMusic();
             }
@@ -848,13 +916,8 @@ public class GameScreen extends JFrame implements Observer {
         );
 
         if (response == JOptionPane.YES_OPTION) {
-            if (gameTimer != null) {
-                gameTimer.cancel();
-            }
-
-            if (aiThread != null && aiThread.isAlive()) {
-                aiThread.interrupt();
-            }
+            gameSession.close();
+            frameTimer.stop();
 
             dispose();
             new MainMenuScreen().setVisible(true);
@@ -879,34 +942,32 @@ public class GameScreen extends JFrame implements Observer {
         );
 
         if (response == JOptionPane.YES_OPTION) {
-            if (gameTimer != null) {
-                gameTimer.cancel();
-            }
+            gameSession.close();
 
             if (animationTimer != null && animationTimer.isRunning()) {
                 animationTimer.stop();
             }
 
-            if (aiThread != null && aiThread.isAlive()) {
-                aiThread.interrupt();
-                aiThread = null;
-            }
-
-            gameBoard = new GameBoard(BOARD_SIZE, BOARD_SIZE);
-            gameBoard.addObserver(this);
+            gameSession = new GameSession(BOARD_SIZE, BOARD_SIZE);
+            gameBoard = gameSession.getBoard();
+            gameLoop = gameSession.getLoop();
+            subscribe(gameBoard);
             hintCount = 0;
             hintButton.setText("Hint (" + (hintLimit - hintCount) + ")");
 
-            gameAI = new GameAI(gameBoard);
+            gameAI = gameSession.getAI();
             String difficulty = ConfigManager.getInstance()
                 .getProperty("ai.autoplay.difficulty", "MEDIUM");
             if ("EASY".equals(difficulty)) {
                 gameAI.setDifficulty(GameAI.Difficulty.EASY);
             } else if ("HARD".equals(difficulty)) {
                 gameAI.setDifficulty(GameAI.Difficulty.HARD);
+            } else if ("EXPERT".equals(difficulty)) {
+                gameAI.setDifficulty(GameAI.Difficulty.EXPERT);
             } else {
                 gameAI.setDifficulty(GameAI.Difficulty.MEDIUM);
             }
+            gameSession.precomputeHint();
 
             scoreLabel.setText("0");
             progressBar.setValue(0);
@@ -947,10 +1008,7 @@ public class GameScreen extends JFrame implements Observer {
             gameTimer.cancel();
         }
 
-        if (aiThread != null && aiThread.isAlive()) {
-            aiThread.interrupt();
-            aiThread = null;
-        }
+        gameSession.stopAutoPlay();
 
         if (isWin) {
             AudioManager.getInstance()
@@ -1010,11 +1068,33 @@ public class GameScreen extends JFrame implements Observer {
             resetGame();
             isPaused = false;
         } else {
+            gameSession.close();
+            frameTimer.stop();
             dispose();
             new MainMenuScreen().setVisible(true);
         }
     }
 
+    /**
+     * Get how far above its cell a falling candy is drawn
+     *
+     * @param row Row position
+     * @param col Column position
+     * @return Offset in cells, 0 once the candy has landed
+     */
+    private float dropOffset(int row, int col) {
+        DropMap current = drops;
+        if (current == null) {
+            return 0f;
+        }
+
+        float progress = Math.min(
+            1f,
+            (System.currentTimeMillis() - dropStartMillis) / (float) DROP_MILLIS
+        );
+        return current.getFall(row, col) * (1f - progress * progress);
+    }
+
     /**
      * Start animation timer
      */
@@ -1040,6 +1120,14 @@ public class GameScreen extends JFrame implements Observer {
                 }
             }
 
+            if (drops != null) {
+                if (System.currentTimeMillis() - dropStartMillis < DROP_MILLIS) {
+                    stillAnimating = true;
+                } else {
+                    drops = null;
+                }
+            }
+
             gameBoardPanel.repaint();
 
             if (!stillAnimating) {
@@ -1052,59 +1140,87 @@ public class GameScreen extends JFrame implements Observer {
     }
 
     /**
-     * Handle updates from the game board model
+     * Subscribe the view and the sound effects to a board's events
      */
-    @Override
-    public void update(Observable o, Object arg) {
-        if (o instanceof GameBoard) {
-            scoreLabel.setText(String.valueOf(gameBoard.getScore()));
-
-            int score = gameBoard.getScore();
-            int targetScore = gameBoard.getTargetScore();
-            int progress = Math.min(100, (score * 100) / targetScore);
-            progressBar.setValue(score);
-            progressBar.setString(progress + "%");
-
-            if (gameMode != GameMode.TIMED && movesLabel != null) {
-                movesLabel.setText(String.valueOf(gameBoard.getMovesLeft()));
-            }
+    private void subscribe(GameBoard board) {
+        boardEvents = board.getEvents().subscribe();
+        gameAudio = new GameAudio(board.getEvents());
+        dropBuffer = new DropMap(board.getRows(), board.getCols());
+        drops = null;
+    }
 
-            if (arg instanceof String) {
-                String updateType = (String) arg;
-
-                switch (updateType) {
-                    case "match":
-                        List<Candy> matches = gameBoard.getPendingMatches();
-                        for (Candy candy : matches) {
-                            Color color = getColorForCandy(candy);
-                            CandyAnimation animation = new CandyAnimation(
-                                candy.getRow(),
-                                candy.getColumn(),
-                                0,
-                                0,
-                                color
-                            );
-                            animation.isRemoving = true;
-                            animations.add(animation);
-                        }
-                        startAnimationTimer();
-                        break;
-                    case "remove":
-                        animations.clear();
-                        break;
-                    case "collapse":
-                        break;
-                    case "win":
-                        endGame(true);
-                        break;
-                    case "lose":
-                    case "no_moves":
-                        endGame(false);
-                        break;
-                }
+    /**
+     * Consume the events the board published since the last frame
+     */
+    private void pollEvents() {
+        gameAudio.poll();
+        onEvents(boardEvents.poll());
+    }
+
+    /**
+     * Handle one frame's worth of board events
+     */
+    private void onEvents(EventBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        scoreLabel.setText(String.valueOf(gameBoard.getScore()));
+
+        int score = gameBoard.getScore();
+        int targetScore = gameBoard.getTargetScore();
+        int progress = Math.min(100, (score * 100) / targetScore);
+        progressBar.setValue(score);
+        progressBar.setString(progress + "%");
+
+        if (gameMode != GameMode.TIMED && movesLabel != null) {
+            movesLabel.setText(String.valueOf(gameBoard.getMovesLeft()));
+        }
+
+        boolean rearranged =
+            batch.contains(GameEvent.RESTORE) ||
+            batch.contains(GameEvent.SHUFFLE);
+
+        if (batch.contains(GameEvent.REMOVE) || rearranged) {
+            animations.clear();
+        }
+
+        if (rearranged) {
+            drops = null;
+        }
+
+        if (batch.contains(GameEvent.DROP)) {
+            gameBoard.copyDropMap(dropBuffer);
+            drops = dropBuffer;
+            dropStartMillis = System.currentTimeMillis();
+            startAnimationTimer();
+        }
+
+        if (batch.contains(GameEvent.MATCH)) {
+            List<Candy> matches = gameBoard.getPendingMatches();
+            for (Candy candy : matches) {
+                Color color = getColorForCandy(candy);
+                CandyAnimation animation = new CandyAnimation(
+                    candy.getRow(),
+                    candy.getColumn(),
+                    0,
+                    0,
+                    color
+                );
+                animation.isRemoving = true;
+                animations.add(animation);
             }
+            startAnimationTimer();
+        }
 
-            gameBoardPanel.repaint();
+        gameBoardPanel.repaint();
+
+        if (batch.contains(GameEvent.WIN)) {
+            endGame(true);
+        } else if (
+            batch.contains(GameEvent.LOSE) || batch.contains(GameEvent.NO_MOVES)
+        ) {
+            endGame(false);
         }
     }
 